@@ -0,0 +1,49 @@
+import benchmarks.Fixture;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Broadcasts a message to every node, and runs the simulation until it has been delivered. */
+public class BroadcastFixture implements Fixture {
+  private Simulation simulation;
+  private Node source;
+  private Message message;
+
+  @Override public void setUp(String variant, int size) {
+    RandomStream random = RandomStream.create(0);
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < size; ++i) {
+      nodes.add(new SinkNode(EarthPosition.randomPosition(random)));
+    }
+    Network network = new FullyConnectedNetwork(nodes, random);
+    BroadcastMode broadcastMode = BroadcastMode.valueOf(variant.toUpperCase());
+    simulation = new Simulation(
+        network, new HeapEventQueue(), TimeResolution.EXACT, broadcastMode);
+    source = nodes.get(0);
+    message = new ProposalMessage(0, new Proposal(), source);
+  }
+
+  @Override public Object run() {
+    simulation.broadcast(source, message, 0);
+    simulation.run(Double.MAX_VALUE);
+    return simulation;
+  }
+
+  /** A node which ignores all events. Unlike a failed node, deliveries to it aren't skipped. */
+  private static class SinkNode extends Node {
+    SinkNode(EarthPosition position) {
+      super(position);
+    }
+
+    @Override void onStart(Simulation simulation) {
+      // No-op.
+    }
+
+    @Override void onTimerEvent(TimerEvent timerEvent, Simulation simulation) {
+      // No-op.
+    }
+
+    @Override void onMessageEvent(MessageEvent messageEvent, Simulation simulation) {
+      // No-op.
+    }
+  }
+}
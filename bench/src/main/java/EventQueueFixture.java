@@ -0,0 +1,42 @@
+import benchmarks.Fixture;
+
+/** Polls the earliest event from a queue of fixed size, and adds a later event in its place. */
+public class EventQueueFixture implements Fixture {
+  private final RandomStream random = RandomStream.create(0);
+  private EventQueue queue;
+  private TimeResolution timeResolution;
+  private Node subject;
+  private long nextSequence = 0;
+
+  @Override public void setUp(String variant, int size) {
+    switch (variant) {
+      case "heap":
+        queue = new HeapEventQueue();
+        timeResolution = TimeResolution.EXACT;
+        break;
+      case "calendar":
+        queue = new CalendarEventQueue();
+        timeResolution = TimeResolution.NANOSECONDS;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown queue: " + variant);
+    }
+    subject = new FailedNode(EarthPosition.randomPosition(random));
+    for (int i = 0; i < size; ++i) {
+      add(random.nextDouble());
+    }
+  }
+
+  @Override public Object run() {
+    Event event = queue.poll();
+    // Increments on the order of a message latency.
+    add(event.getTime() + 0.1 * random.nextDouble());
+    return event;
+  }
+
+  private void add(double time) {
+    Event event = new TimerEvent(time, subject);
+    event.setOrder(timeResolution.toKey(time), nextSequence++);
+    queue.add(event);
+  }
+}
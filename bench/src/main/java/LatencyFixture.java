@@ -0,0 +1,39 @@
+import benchmarks.Fixture;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Looks up the base latency between a sequence of node pairs. */
+public class LatencyFixture implements Fixture {
+  private Network network;
+  private Node[] nodes;
+  private boolean useMatrix;
+  private int source = 0, destination = 0;
+
+  @Override public void setUp(String variant, int size) {
+    RandomStream random = RandomStream.create(0);
+    List<Node> nodeList = new ArrayList<>();
+    for (int i = 0; i < size; ++i) {
+      nodeList.add(new FailedNode(EarthPosition.randomPosition(random)));
+    }
+    network = new FullyConnectedNetwork(nodeList, random);
+    nodes = nodeList.toArray(new Node[0]);
+    switch (variant) {
+      case "distance":
+        useMatrix = false;
+        break;
+      case "matrix":
+        useMatrix = true;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown method: " + variant);
+    }
+  }
+
+  @Override public Object run() {
+    // Step through pairs with a stride that's coprime to typical sizes, to defeat caching.
+    source = (source + 1) % nodes.length;
+    destination = (destination + 7919) % nodes.length;
+    Node a = nodes[source], b = nodes[destination];
+    return useMatrix ? network.getBaseLatency(a, b) : a.getDistance(b) / Network.SPEED_OF_FIBER;
+  }
+}
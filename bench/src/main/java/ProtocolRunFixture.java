@@ -0,0 +1,46 @@
+import benchmarks.Fixture;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a full simulation with 90% correct and 10% failed nodes, like {@link Main}. The timeout is
+ * long enough for every correct node to decide in the first cycle. Node positions are fixed, so
+ * the latency matrix is only computed once.
+ */
+public class ProtocolRunFixture implements Fixture {
+  private static final double TIMEOUT = 0.5;
+  private static final double TIME_LIMIT = 10;
+
+  /** Every run of a setup reuses the same positions, so the cache only ever holds one matrix. */
+  private final LatencyMatrix.Cache latencyMatrixCache = new LatencyMatrix.Cache(Long.MAX_VALUE);
+  private final List<EarthPosition> positions = new ArrayList<>();
+  private final List<Boolean> failed = new ArrayList<>();
+  private ConsensusProtocol protocol;
+  private long seed = 0;
+
+  @Override public void setUp(String variant, int size) {
+    protocol = ConsensusProtocol.forName(variant);
+    RandomStream random = RandomStream.create(0);
+    for (int i = 0; i < size; ++i) {
+      positions.add(EarthPosition.randomPosition(random));
+      failed.add(i < size / 10);
+    }
+    Util.shuffle(failed, random);
+  }
+
+  @Override public Object run() {
+    List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < positions.size(); ++i) {
+      EarthPosition position = positions.get(i);
+      nodes.add(failed.get(i)
+          ? new FailedNode(position) : protocol.createCorrectNode(position, TIMEOUT));
+    }
+    Network network =
+        new FullyConnectedNetwork(nodes, RandomStream.create(seed++), latencyMatrixCache);
+    Simulation simulation = new Simulation(network);
+    if (!simulation.run(TIME_LIMIT, StopCondition.allCorrectNodesTerminated())) {
+      throw new IllegalStateException("Simulation timed out");
+    }
+    return simulation;
+  }
+}
@@ -0,0 +1,60 @@
+import benchmarks.Fixture;
+
+/**
+ * Counts votes from distinct voters until a quorum is detected, mimicking how each protocol's
+ * cycle state tallies votes.
+ */
+public class QuorumFixture implements Fixture {
+  private final Proposal proposal = new Proposal();
+  private String protocol;
+  private int nodes;
+
+  @Override public void setUp(String variant, int size) {
+    protocol = variant;
+    nodes = size;
+  }
+
+  @Override public Object run() {
+    int quorumSize = nodes * 2 / 3 + 1;
+    switch (protocol) {
+      case "tendermint": {
+        // Pre-commits, checked for a newly committed proposal after each vote.
+        QuorumTracker preCommits = new QuorumTracker(quorumSize);
+        for (int voter = 0; voter < nodes; ++voter) {
+          if (preCommits.addVote(proposal, voter)) {
+            return preCommits;
+          }
+        }
+        return preCommits;
+      }
+      case "algorand": {
+        // Next-votes split between a proposal and nil, checked for a nil quorum after each vote.
+        QuorumTracker nextVotes = new QuorumTracker(quorumSize);
+        for (int voter = 0; voter < nodes; ++voter) {
+          nextVotes.addVote(proposal, voter);
+          if (voter % 4 == 0) {
+            nextVotes.addVote(null, voter);
+          }
+          if (nextVotes.hasQuorum(null) || nextVotes.hasQuorum()) {
+            return nextVotes;
+          }
+        }
+        return nextVotes;
+      }
+      case "mir": {
+        // Commit votes, which count towards both the prepared and committed tallies of a round.
+        QuorumTracker prepareVotes = new QuorumTracker(quorumSize);
+        QuorumTracker commitVotes = new QuorumTracker(quorumSize);
+        for (int voter = 0; voter < nodes; ++voter) {
+          prepareVotes.addVote(proposal, voter);
+          if (commitVotes.addVote(proposal, voter) || prepareVotes.hasQuorum()) {
+            return commitVotes;
+          }
+        }
+        return commitVotes;
+      }
+      default:
+        throw new IllegalArgumentException("Unknown protocol: " + protocol);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a steady-state poll and add on an event queue of a given size, i.e. the "hold" model
+ * commonly used to compare priority queues for discrete-event simulation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventQueueBenchmark {
+  @Param({"heap", "calendar"})
+  public String queue;
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  private Fixture fixture;
+
+  @Setup public void setUp() {
+    fixture = Fixture.load("EventQueueFixture");
+    fixture.setUp(queue, size);
+  }
+
+  @Benchmark public Object pollAndAdd() {
+    return fixture.run();
+  }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+/**
+ * A benchmark workload implemented against the simulator. JMH requires benchmarks to be in a named
+ * package, but the simulator lives in the default package, which named packages can't refer to.
+ * Workloads are therefore implemented by public classes in the default package, and loaded by name
+ * through this interface.
+ */
+public interface Fixture {
+  /** Prepare the workload. Called once per trial, outside of measurement. */
+  void setUp(String variant, int size);
+
+  /** Perform one operation, returning a result for the benchmark to consume. */
+  Object run();
+
+  /** Instantiate the fixture class with the given name. */
+  static Fixture load(String className) {
+    try {
+      return (Fixture) Class.forName(className).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Couldn't load fixture " + className, e);
+    }
+  }
+}
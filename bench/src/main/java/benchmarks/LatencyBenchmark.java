@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures looking up the base latency between a pair of nodes, either by computing the
+ * great-circle distance with {@code EarthPosition.getDistance}, or from the precomputed matrix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyBenchmark {
+  @Param({"distance", "matrix"})
+  public String method;
+
+  @Param({"1000"})
+  public int nodes;
+
+  private Fixture fixture;
+
+  @Setup public void setUp() {
+    fixture = Fixture.load("LatencyFixture");
+    fixture.setUp(method, nodes);
+  }
+
+  @Benchmark public Object baseLatency() {
+    return fixture.run();
+  }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a full simulation of one protocol, with timeouts long enough that every correct node
+ * decides in the first cycle. Runs at 10,000 nodes take minutes each and need a large heap, so
+ * consider restricting the sizes with {@code -p nodes=100,1000}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ProtocolRunBenchmark {
+  @Param({"tendermint", "responsive-tendermint", "algorand", "mir", "hotstuff",
+      "chained-hotstuff"})
+  public String protocol;
+
+  @Param({"100", "1000", "10000"})
+  public int nodes;
+
+  private Fixture fixture;
+
+  @Setup public void setUp() {
+    fixture = Fixture.load("ProtocolRunFixture");
+    fixture.setUp(protocol, nodes);
+  }
+
+  @Benchmark public Object singleCycle() {
+    return fixture.run();
+  }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures counting votes until a quorum is detected, following the tallying pattern of each
+ * protocol's cycle state.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuorumBenchmark {
+  @Param({"tendermint", "algorand", "mir"})
+  public String protocol;
+
+  @Param({"100", "1000", "10000"})
+  public int nodes;
+
+  private Fixture fixture;
+
+  @Setup public void setUp() {
+    fixture = Fixture.load("QuorumFixture");
+    fixture.setUp(protocol, nodes);
+  }
+
+  @Benchmark public Object reachQuorum() {
+    return fixture.run();
+  }
+}
@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runs samples of several points (e.g. protocols at one timeout) in batches, and stops sampling
+ * each point once the confidence interval of its mean is narrow enough. Each run is summarized by a
+ * single value, such as the mean termination time of its nodes, and runs are treated as independent
+ * observations of that value.
+ *
+ * <p>Points where too many runs fail to complete, e.g. because they time out, are abandoned rather
+ * than sampled to the limit. Decisions are only made between batches, and batches are folded in
+ * order, so which runs are made doesn't depend on the number of threads.
+ */
+class AdaptiveSampler {
+  /** The two-sided 95% quantile of the standard normal distribution. */
+  static final double Z_95 = 1.959964;
+
+  private final RunStatistic statistic;
+  private final double relativeHalfWidth;
+  private final int minRuns, maxRuns;
+  private final double maxIncompleteFraction;
+
+  /**
+   * @param statistic summarizes the termination times of a run as a single value
+   * @param relativeHalfWidth the target half-width of a 95% confidence interval, relative to the
+   *     mean
+   * @param minRuns the number of runs made for each point before checking the interval
+   * @param maxRuns the maximum number of runs made for each point
+   * @param maxIncompleteFraction the fraction of runs which may fail before a point is abandoned
+   */
+  AdaptiveSampler(RunStatistic statistic, double relativeHalfWidth, int minRuns, int maxRuns,
+      double maxIncompleteFraction) {
+    if (minRuns < 2 || maxRuns < minRuns) {
+      throw new IllegalArgumentException("Need 2 <= minRuns <= maxRuns");
+    }
+    this.statistic = statistic;
+    this.relativeHalfWidth = relativeHalfWidth;
+    this.minRuns = minRuns;
+    this.maxRuns = maxRuns;
+    this.maxIncompleteFraction = maxIncompleteFraction;
+  }
+
+  int getMaxRuns() {
+    return maxRuns;
+  }
+
+  /**
+   * Sample each of {@code pointCount} points until it's resolved or abandoned.
+   *
+   * @param sample runs a sample of a point, given the point and run indices, returning its result,
+   *     or empty if it didn't complete
+   * @param terminationTimes extracts the termination times of the correct nodes from a result
+   * @param sink receives the result of each completed run, along with its point index
+   * @return an estimate for each point
+   */
+  <R> Estimate[] run(Sweep sweep, int pointCount, Sample<R> sample,
+      Function<R, double[]> terminationTimes, ObjIntConsumer<R> sink) {
+    Estimate[] estimates = new Estimate[pointCount];
+    for (int p = 0; p < pointCount; ++p) {
+      estimates[p] = new Estimate();
+    }
+
+    while (true) {
+      // Choose the size of the next batch for each point still being sampled. Batches grow with the
+      // number of runs so far, so the interval is checked a logarithmic number of times.
+      int[] batchStarts = new int[pointCount + 1];
+      int[] runOffsets = new int[pointCount];
+      for (int p = 0; p < pointCount; ++p) {
+        Estimate estimate = estimates[p];
+        runOffsets[p] = estimate.getRunCount();
+        int batchSize = estimate.isFinished() ? 0
+            : Math.min(Math.max(minRuns - estimate.getRunCount(), estimate.getRunCount() / 2),
+                maxRuns - estimate.getRunCount());
+        batchStarts[p + 1] = batchStarts[p] + batchSize;
+      }
+      int total = batchStarts[pointCount];
+      if (total == 0) {
+        return estimates;
+      }
+
+      // Run all points' batches together, so that the pool has enough work to balance.
+      sweep.run(total,
+          i -> {
+            int p = pointOf(batchStarts, i);
+            return sample.run(p, runOffsets[p] + i - batchStarts[p]);
+          },
+          (result, i) -> {
+            int p = pointOf(batchStarts, i);
+            if (result.isPresent()) {
+              estimates[p].add(statistic.apply(terminationTimes.apply(result.get())));
+              sink.accept(result.get(), p);
+            } else {
+              estimates[p].addIncomplete();
+            }
+          });
+
+      for (Estimate estimate : estimates) {
+        estimate.update();
+      }
+    }
+  }
+
+  /** The point whose batch contains the given index. There are only a few points to scan. */
+  private static int pointOf(int[] batchStarts, int index) {
+    int p = 0;
+    while (batchStarts[p + 1] <= index) {
+      ++p;
+    }
+    return p;
+  }
+
+  /** Runs a single sample. */
+  interface Sample<R> {
+    Optional<R> run(int point, int run);
+  }
+
+  /** Summarizes the termination times of the correct nodes in a run. */
+  interface RunStatistic {
+    double apply(double[] terminationTimes);
+
+    static RunStatistic mean() {
+      return times -> Arrays.stream(times).average().orElse(Double.NaN);
+    }
+
+    /** The smallest time such that at least {@code percentile} percent of times are no greater. */
+    static RunStatistic percentile(double percentile) {
+      return times -> {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+      };
+    }
+
+    /** Parse "mean", or a percentile such as "p99". */
+    static RunStatistic parse(String name) {
+      if (name.equals("mean")) {
+        return mean();
+      }
+      if (name.startsWith("p")) {
+        return percentile(Double.parseDouble(name.substring(1)));
+      }
+      throw new IllegalArgumentException("Unknown statistic: " + name);
+    }
+  }
+
+  /** The runs of a single point so far, and whether to keep sampling it. */
+  class Estimate {
+    /** The statistic of each run, in order, or NaN for runs which didn't complete. */
+    private final double[] runValues = new double[maxRuns];
+    private int count = 0;
+    private int incompleteCount = 0;
+    private double mean = 0, sumOfSquaredDeviations = 0;
+    private boolean resolved = false, abandoned = false;
+
+    void add(double value) {
+      runValues[getRunCount()] = value;
+      ++count;
+      // Welford's algorithm.
+      double delta = value - mean;
+      mean += delta / count;
+      sumOfSquaredDeviations += delta * (value - mean);
+    }
+
+    void addIncomplete() {
+      runValues[getRunCount()] = Double.NaN;
+      ++incompleteCount;
+    }
+
+    /** Decide whether to stop sampling, once a batch has been added. */
+    void update() {
+      int runs = getRunCount();
+      if (runs < minRuns) {
+        return;
+      }
+      if (incompleteCount > maxIncompleteFraction * runs) {
+        abandoned = true;
+      } else if (runs >= maxRuns || count >= 2 && getHalfWidth() <= relativeHalfWidth * mean) {
+        resolved = true;
+      }
+    }
+
+    boolean isFinished() {
+      return resolved || abandoned;
+    }
+
+    /** Whether sampling stopped because too many runs failed to complete. */
+    boolean isAbandoned() {
+      return abandoned;
+    }
+
+    int getRunCount() {
+      return count + incompleteCount;
+    }
+
+    int getIncompleteCount() {
+      return incompleteCount;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    /** The mean of the statistic over completed runs, or NaN if there are none. */
+    double getMean() {
+      return count > 0 ? mean : Double.NaN;
+    }
+
+    /** The half-width of a 95% confidence interval for the mean, by the normal approximation. */
+    double getHalfWidth() {
+      if (count < 2) {
+        return Double.NaN;
+      }
+      double variance = sumOfSquaredDeviations / (count - 1);
+      return Z_95 * Math.sqrt(variance / count);
+    }
+
+    /** The statistic of each completed run, in order. */
+    double[] getValues() {
+      return Arrays.stream(getRunValues()).filter(v -> !Double.isNaN(v)).toArray();
+    }
+
+    /**
+     * The statistic of each run, indexed by run, or NaN for runs which didn't complete. When runs
+     * of different points share scenarios, this pairs up their values.
+     */
+    double[] getRunValues() {
+      return Arrays.copyOf(runValues, getRunCount());
+    }
+  }
+}
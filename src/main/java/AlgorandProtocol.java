@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The Algorand protocol, run by {@link CorrectAlgorandNode}. */
+public class AlgorandProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "algorand";
+  }
+
+  @Override public String getDisplayName() {
+    return "Algorand";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectAlgorandNode(position, initialTimeout);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("cycles_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("cycles_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectAlgorandNode) node).getCycleCount()));
+  }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates the arrival times and sizes of the transactions which clients submit to the network as
+ * a whole. Each transaction is then submitted to one correct node, chosen uniformly at random.
+ */
+abstract class ArrivalProcess {
+  /** Generate arrivals up to {@code horizon} seconds, in ascending order of time. */
+  abstract Arrivals generate(RandomStream random, double horizon);
+
+  /**
+   * Transactions arriving independently at a constant rate.
+   *
+   * @param rate the mean number of transactions per second
+   */
+  static ArrivalProcess poisson(double rate, int sizeBytes) {
+    return new ArrivalProcess() {
+      @Override Arrivals generate(RandomStream random, double horizon) {
+        Arrivals arrivals = new Arrivals();
+        for (double time = exponential(random, rate); time < horizon;
+            time += exponential(random, rate)) {
+          arrivals.add(time, sizeBytes);
+        }
+        return arrivals;
+      }
+    };
+  }
+
+  /**
+   * Transactions arriving in bursts, as a Poisson process whose rate alternates between a base rate
+   * and a burst rate. Bursts and the gaps between them have exponentially distributed lengths, and
+   * the process starts in a gap.
+   */
+  static ArrivalProcess bursty(double baseRate, double burstRate, double meanBurstLength,
+      double meanGapLength, int sizeBytes) {
+    return new ArrivalProcess() {
+      @Override Arrivals generate(RandomStream random, double horizon) {
+        Arrivals arrivals = new Arrivals();
+        boolean burst = false;
+        double time = 0;
+        while (time < horizon) {
+          double end = Math.min(horizon,
+              time + exponential(random, 1 / (burst ? meanBurstLength : meanGapLength)));
+          // The process is memoryless, so the next arrival can be drawn afresh in each period.
+          double rate = burst ? burstRate : baseRate;
+          for (time += exponential(random, rate); time < end; time += exponential(random, rate)) {
+            arrivals.add(time, sizeBytes);
+          }
+          time = end;
+          burst = !burst;
+        }
+        return arrivals;
+      }
+    };
+  }
+
+  /**
+   * Transactions replayed from a trace, a CSV file with a header row and then an arrival time in
+   * seconds and a size in bytes on each line. The file is read once, and every run replays it
+   * identically, up to its horizon.
+   */
+  static ArrivalProcess trace(Path path) throws IOException {
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    Arrivals trace = new Arrivals();
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      trace.add(Double.parseDouble(fields[0].trim()), Integer.parseInt(fields[1].trim()));
+    }
+    trace.sort();
+    return new ArrivalProcess() {
+      @Override Arrivals generate(RandomStream random, double horizon) {
+        return trace.truncate(horizon);
+      }
+    };
+  }
+
+  private static double exponential(RandomStream random, double rate) {
+    return -Math.log(1 - random.nextDouble()) / rate;
+  }
+
+  /** Arrival times and sizes, in two parallel arrays which grow as arrivals are added. */
+  static class Arrivals {
+    private double[] times = new double[16];
+    private int[] sizes = new int[16];
+    private int count = 0;
+
+    void add(double time, int sizeBytes) {
+      if (count == times.length) {
+        times = Arrays.copyOf(times, 2 * count);
+        sizes = Arrays.copyOf(sizes, 2 * count);
+      }
+      times[count] = time;
+      sizes[count] = sizeBytes;
+      ++count;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    double getTime(int index) {
+      return times[index];
+    }
+
+    int getSize(int index) {
+      return sizes[index];
+    }
+
+    /** The arrivals before {@code horizon}, assuming they're sorted. */
+    Arrivals truncate(double horizon) {
+      Arrivals truncated = new Arrivals();
+      for (int i = 0; i < count && times[i] < horizon; ++i) {
+        truncated.add(times[i], sizes[i]);
+      }
+      return truncated;
+    }
+
+    /** Sort by arrival time, keeping the order of simultaneous arrivals. */
+    private void sort() {
+      int[] order = Util.sortedIndices(times, count);
+      double[] sortedTimes = new double[times.length];
+      int[] sortedSizes = new int[sizes.length];
+      for (int i = 0; i < count; ++i) {
+        sortedTimes[i] = times[order[i]];
+        sortedSizes[i] = sizes[order[i]];
+      }
+      times = sortedTimes;
+      sizes = sortedSizes;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A fully connected network in which each node's links have limited capacity, so that large
+ * messages and busy nodes are slower. A message is first serialized onto its source's uplink, which
+ * sends messages one at a time in the order they were sent, then propagates with the usual jittered
+ * latency, and is finally received over its destination's downlink, which receives one message at a
+ * time. A leader broadcasting a large block to many nodes thus waits for its uplink, and one
+ * receiving many votes for its downlink.
+ *
+ * <p>Messages to several destinations may reach a downlink out of order, so each downlink keeps the
+ * intervals it has already been reserved for, and a message takes the earliest gap, no earlier
+ * than its first bit arrives, which is long enough to receive it.
+ */
+class BandwidthNetwork extends FullyConnectedNetwork {
+  /** The capacity of each node's uplink and downlink, in bits per second, indexed by node ID. */
+  private final double[] uplinkCapacities, downlinkCapacities;
+  /** The time at which each node's uplink finishes sending all the messages queued on it. */
+  private final double[] uplinkFreeTimes;
+  /** The intervals for which each node's downlink is reserved, from start to end time. */
+  private final List<TreeMap<Double, Double>> downlinkReservations;
+
+  /**
+   * @param uplinkCapacities the capacity of each node's uplink, in bits per second, indexed by node
+   *     ID, which may be infinite
+   * @param downlinkCapacities the capacity of each node's downlink, likewise
+   */
+  BandwidthNetwork(List<Node> nodes, RandomStream random, LatencyMatrix.Cache latencyMatrixCache,
+      boolean independentSources, DelayDistribution delays, double[] uplinkCapacities,
+      double[] downlinkCapacities) {
+    super(nodes, random, latencyMatrixCache, independentSources, delays);
+    if (uplinkCapacities.length != nodes.size() || downlinkCapacities.length != nodes.size()) {
+      throw new IllegalArgumentException("Need a capacity for each node");
+    }
+    this.uplinkCapacities = uplinkCapacities;
+    this.downlinkCapacities = downlinkCapacities;
+    this.uplinkFreeTimes = new double[nodes.size()];
+    this.downlinkReservations = new ArrayList<>(nodes.size());
+    for (int i = 0; i < nodes.size(); ++i) {
+      downlinkReservations.add(new TreeMap<>());
+    }
+  }
+
+  @Override double getArrivalTime(Node source, Node destination, Message message, double time) {
+    // Draw the propagation latency first, so that jitter is the same as without limited capacity.
+    double latency = getLatency(source, destination);
+    if (source == destination) {
+      return time + latency;
+    }
+    double bits = 8.0 * message.getSizeBytes();
+
+    int sourceId = source.getId();
+    double sendStart = Math.max(time, uplinkFreeTimes[sourceId]);
+    double sendEnd = sendStart + bits / uplinkCapacities[sourceId];
+    uplinkFreeTimes[sourceId] = sendEnd;
+
+    // The downlink can't finish receiving before the last bit has propagated.
+    double receiveEnd = reserveDownlink(destination.getId(), sendStart + latency,
+        bits / downlinkCapacities[destination.getId()], time);
+    return Math.max(receiveEnd, sendEnd + latency);
+  }
+
+  /**
+   * Reserve the earliest interval of a downlink of length {@code duration} starting at or after
+   * {@code earliestStart}, returning its end time.
+   *
+   * @param now the current time, before which reservations are discarded, since no message sent
+   *     from now on can arrive before it
+   */
+  private double reserveDownlink(int destinationId, double earliestStart, double duration,
+      double now) {
+    if (duration == 0) {
+      return earliestStart;
+    }
+    TreeMap<Double, Double> reservations = downlinkReservations.get(destinationId);
+    while (!reservations.isEmpty() && reservations.firstEntry().getValue() <= now) {
+      reservations.pollFirstEntry();
+    }
+
+    double start = earliestStart;
+    Map.Entry<Double, Double> previous = reservations.floorEntry(start);
+    if (previous != null && previous.getValue() > start) {
+      start = previous.getValue();
+    }
+    for (Map.Entry<Double, Double> next : reservations.tailMap(start, false).entrySet()) {
+      if (next.getKey() >= start + duration) {
+        break;
+      }
+      start = next.getValue();
+    }
+    double end = start + duration;
+
+    // Merge with adjacent reservations, to keep the map small while the downlink is saturated.
+    Map.Entry<Double, Double> before = reservations.lowerEntry(start);
+    double mergedStart = start;
+    if (before != null && before.getValue() == start) {
+      mergedStart = before.getKey();
+    }
+    Double after = reservations.remove(end);
+    reservations.put(mergedStart, after != null ? after : end);
+    return end;
+  }
+
+  /**
+   * Downlinks are shared by all sources, so the arrival times drawn for one source depend on the
+   * messages other sources sent before it, and partitions can't draw them concurrently.
+   */
+  @Override boolean hasIndependentSources() {
+    return false;
+  }
+}
@@ -0,0 +1,11 @@
+/** Determines how a broadcast is represented in the event queue. */
+enum BroadcastMode {
+  /** Each broadcast schedules a separate message event for every destination. */
+  EAGER,
+
+  /**
+   * Each broadcast schedules a single event, which releases deliveries as simulated time reaches
+   * them. Deliveries to failed or terminated nodes are dropped when the broadcast is sent.
+   */
+  LAZY
+}
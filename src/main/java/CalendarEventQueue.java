@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An event queue based on Brown's calendar queue. Events are hashed by time key into an array of
+ * buckets, each covering a "day" of {@code width} keys, and the queue is drained by walking the
+ * days in order. With a bucket width close to the typical gap between events, adding and polling
+ * take amortized constant time. This works best with {@link TimeResolution#NANOSECONDS}, where
+ * keys are linear in time.
+ */
+class CalendarEventQueue implements EventQueue {
+  private static final int MIN_BUCKETS = 16;
+
+  private static final Comparator<Event> ORDER = Comparator
+      .comparingLong(Event::getTimeKey)
+      .thenComparingLong(Event::getSequence);
+
+  private Bucket[] buckets;
+  private long width = 1;
+  private int size = 0;
+
+  /** The index of the bucket being drained. */
+  private int current = 0;
+  /** The exclusive upper bound of the day that the current bucket is being drained for. */
+  private long currentTop;
+  /** A lower bound on the keys of all events in the queue. */
+  private long lastKey = Long.MAX_VALUE;
+
+  CalendarEventQueue() {
+    buckets = newBuckets(MIN_BUCKETS);
+    currentTop = width;
+  }
+
+  @Override public void add(Event event) {
+    long key = event.getTimeKey();
+    if (key < lastKey) {
+      // This is the earliest event so far, so resume draining from its day.
+      lastKey = key;
+      moveTo(key);
+    } else if (key < currentTop - width) {
+      // A peek may have moved past empty days without polling, so this event's day may already
+      // have been passed, in which case draining resumes from it.
+      moveTo(key);
+    }
+    buckets[bucketIndex(key)].add(event);
+    if (++size > 2 * buckets.length) {
+      resize(2 * buckets.length);
+    }
+  }
+
+  @Override public Event peek() {
+    Bucket bucket = findEarliest();
+    return bucket == null ? null : bucket.peek();
+  }
+
+  @Override public Event poll() {
+    Bucket bucket = findEarliest();
+    return bucket == null ? null : take(bucket);
+  }
+
+  @Override public boolean remove(Event event) {
+    if (!buckets[bucketIndex(event.getTimeKey())].remove(event)) {
+      return false;
+    }
+    if (--size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+      resize(buckets.length / 2);
+    }
+    return true;
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  /** Advance to the bucket holding the earliest event and return it, or null if there is none. */
+  private Bucket findEarliest() {
+    if (size == 0) {
+      return null;
+    }
+
+    for (int i = 0; i < buckets.length; ++i) {
+      Bucket bucket = buckets[current];
+      if (!bucket.isEmpty() && bucket.peek().getTimeKey() < currentTop) {
+        return bucket;
+      }
+      current = (current + 1) & (buckets.length - 1);
+      currentTop += width;
+    }
+
+    // We went around a whole year without finding an event, so the events must be sparse. Jump
+    // directly to the earliest one.
+    Bucket earliest = null;
+    for (Bucket bucket : buckets) {
+      if (!bucket.isEmpty()
+          && (earliest == null || ORDER.compare(bucket.peek(), earliest.peek()) < 0)) {
+        earliest = bucket;
+      }
+    }
+    moveTo(earliest.peek().getTimeKey());
+    return earliest;
+  }
+
+  private Event take(Bucket bucket) {
+    Event event = bucket.poll();
+    lastKey = event.getTimeKey();
+    if (--size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+      resize(buckets.length / 2);
+    }
+    return event;
+  }
+
+  private void moveTo(long key) {
+    long day = key / width;
+    current = (int) (day & (buckets.length - 1));
+    currentTop = (day + 1) * width;
+  }
+
+  private int bucketIndex(long key) {
+    return (int) ((key / width) & (buckets.length - 1));
+  }
+
+  /** Rebuild the calendar with a new number of buckets, re-estimating the bucket width. */
+  private void resize(int bucketCount) {
+    Event[] events = new Event[size];
+    int n = 0;
+    for (Bucket bucket : buckets) {
+      while (!bucket.isEmpty()) {
+        events[n++] = bucket.poll();
+      }
+    }
+    Arrays.sort(events, ORDER);
+
+    width = estimateWidth(events);
+    buckets = newBuckets(bucketCount);
+    for (Event event : events) {
+      buckets[bucketIndex(event.getTimeKey())].add(event);
+    }
+    moveTo(lastKey);
+  }
+
+  /**
+   * Estimate a bucket width as three times the average gap between queued events. Brown samples
+   * only the earliest few events, but here those are often simultaneous deliveries from a single
+   * broadcast, which would give a uselessly small width.
+   */
+  private long estimateWidth(Event[] sortedEvents) {
+    if (sortedEvents.length < 2) {
+      return width;
+    }
+    long span = sortedEvents[sortedEvents.length - 1].getTimeKey() - sortedEvents[0].getTimeKey();
+    return Math.max(1, 3 * (span / sortedEvents.length));
+  }
+
+  private static Bucket[] newBuckets(int count) {
+    Bucket[] buckets = new Bucket[count];
+    for (int i = 0; i < count; ++i) {
+      buckets[i] = new Bucket();
+    }
+    return buckets;
+  }
+
+  /** The events of a single bucket, sorted in descending order so the earliest is at the end. */
+  private static class Bucket {
+    private Event[] events = new Event[4];
+    private int size = 0;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    Event peek() {
+      return events[size - 1];
+    }
+
+    Event poll() {
+      Event event = events[--size];
+      events[size] = null;
+      return event;
+    }
+
+    void add(Event event) {
+      if (size == events.length) {
+        events = Arrays.copyOf(events, 2 * size);
+      }
+      int index = search(event);
+      System.arraycopy(events, index, events, index + 1, size - index);
+      events[index] = event;
+      ++size;
+    }
+
+    boolean remove(Event event) {
+      int index = search(event);
+      if (index == size || events[index] != event) {
+        return false;
+      }
+      System.arraycopy(events, index + 1, events, index, size - index - 1);
+      events[--size] = null;
+      return true;
+    }
+
+    /** Binary search for the first index whose event doesn't come after the given one. */
+    private int search(Event event) {
+      int low = 0, high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (ORDER.compare(events[mid], event) > 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Chained HotStuff, run by {@link CorrectHotStuffNode}. */
+public class ChainedHotStuffProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "chained-hotstuff";
+  }
+
+  @Override public String getDisplayName() {
+    return "Chained HotStuff";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectHotStuffNode(position, initialTimeout, true);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("views_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("views_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectHotStuffNode) node).getViewCount()));
+  }
+}
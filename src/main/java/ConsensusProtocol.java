@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.ToIntFunction;
+
+/**
+ * A consensus protocol which can be simulated. Implementations are discovered with {@link
+ * ServiceLoader}, by listing them in {@code META-INF/services/ConsensusProtocol}, so that sweeps,
+ * benchmarks and other drivers can run any protocol without knowing about it. Implementations must
+ * be public, with a public no-argument constructor.
+ */
+interface ConsensusProtocol {
+  /** A short, lowercase name identifying this protocol, used in options and output columns. */
+  String getName();
+
+  /** The name of this protocol as it should appear in human-readable output. */
+  String getDisplayName();
+
+  /** Create a correct node running this protocol at the given position. */
+  Node createCorrectNode(EarthPosition position, double initialTimeout);
+
+  /** Whether {@code node}, taken from a network of this protocol, is correct. */
+  default boolean isCorrect(Node node) {
+    return !(node instanceof FailedNode);
+  }
+
+  /** The names of the metrics {@link #recordMetrics} records, written as extra result columns. */
+  default List<String> getMetricNames() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Record any protocol-specific metrics of a completed run, in addition to the termination times
+   * of its correct nodes. Each is averaged over the completed runs of a timeout.
+   *
+   * @param correctNodes the correct nodes of the run, all of which have terminated
+   * @param metrics a map to add metrics to, by name
+   */
+  default void recordMetrics(Simulation simulation, List<Node> correctNodes,
+      Map<String, Double> metrics) {
+  }
+
+  /**
+   * The mean over {@code correctNodes} of a count, such as of cycles, divided by the number of
+   * heights each node decided.
+   */
+  static double meanPerHeight(List<Node> correctNodes, ToIntFunction<Node> count) {
+    return correctNodes.stream()
+        .mapToDouble(node -> (double) count.applyAsInt(node) / node.getHeight())
+        .average()
+        .orElse(Double.NaN);
+  }
+
+  /** Load every available protocol, in the order they're listed by their providers. */
+  static List<ConsensusProtocol> loadAll() {
+    List<ConsensusProtocol> protocols = new ArrayList<>();
+    for (ConsensusProtocol protocol : ServiceLoader.load(ConsensusProtocol.class)) {
+      protocols.add(protocol);
+    }
+    return protocols;
+  }
+
+  /** Load the available protocol with the given name. */
+  static ConsensusProtocol forName(String name) {
+    for (ConsensusProtocol protocol : loadAll()) {
+      if (protocol.getName().equals(name)) {
+        return protocol;
+      }
+    }
+    throw new IllegalArgumentException("Unknown protocol: " + name);
+  }
+}
@@ -1,14 +1,22 @@
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 class CorrectAlgorandNode extends Node {
   private final double timeout;
-  private final Map<Integer, CycleState> cycleStates = new HashMap<>();
+  /**
+   * The observed state of each cycle from the previous one on, which is the earliest whose
+   * next-votes are looked at, and of any earlier cycles whose cert-votes could still reach a
+   * quorum, which would decide. Messages for released cycles can't change anything, so are dropped.
+   */
+  private final StateWindow<CycleState> cycleStates = new StateWindow<>(CycleState::new);
   private int cycle = 0;
-  private double nextTimer;
+  /** The number of cycles of the heights decided so far. */
+  private int cycleCount = 0;
   private Phase phase;
+  private int nodeCount;
+  private int quorumSize;
 
   CorrectAlgorandNode(EarthPosition position, double timeout) {
     super(position);
@@ -16,6 +24,8 @@ class CorrectAlgorandNode extends Node {
   }
 
   @Override void onStart(Simulation simulation) {
+    nodeCount = simulation.getNetwork().getNodes().size();
+    quorumSize = quorumSize(simulation);
     startProposal(simulation, 0);
   }
 
@@ -25,11 +35,6 @@ class CorrectAlgorandNode extends Node {
     }
 
     double time = timerEvent.getTime();
-    if (time != nextTimer) {
-      // It's a stale timer; we must have made the relevant state transition based on observed
-      // messages rather than a timer. Ignore it.
-      return;
-    }
 
     switch (phase) {
       case PROPOSAL:
@@ -49,6 +54,9 @@ class CorrectAlgorandNode extends Node {
     }
 
     Message message = messageEvent.getMessage();
+    if (!acceptMessage(message) || cycleStates.isReleased(message.getCycle())) {
+      return;
+    }
     double time = messageEvent.getTime();
 
     if (message instanceof ProposalMessage) {
@@ -68,34 +76,40 @@ class CorrectAlgorandNode extends Node {
 
   private void handleSoftVoteMessage(Simulation simulation, double time,
       SoftVoteMessage softVoteMessage) {
-    getCycleState(softVoteMessage.getCycle()).addSoftVote(softVoteMessage);
+    getCycleState(softVoteMessage.getCycle()).softVotes.addVote(
+        softVoteMessage.getProposal(), softVoteMessage.getSenderId());
     if (cycle != softVoteMessage.getCycle()) {
       return;
     }
 
     CycleState currentCycleState = getCurrentCycleState();
-    Set<Proposal> softVotedProposals = currentCycleState.getSoftVotedProposals(simulation);
+    List<Proposal> softVotedProposals = currentCycleState.softVotes.getQuorumProposals();
 
     if (phase == Phase.CERTIFYING && currentCycleState.myCertifiedProposal == null) {
       if (!softVotedProposals.isEmpty()) {
-        Proposal proposalToCertify = softVotedProposals.iterator().next();
-        Message certVote = new CertVoteMessage(cycle, proposalToCertify);
+        Proposal proposalToCertify = softVotedProposals.get(0);
+        Message certVote = new CertVoteMessage(cycle, proposalToCertify, this);
         simulation.broadcast(this, certVote, time);
         currentCycleState.myCertifiedProposal = proposalToCertify;
+        if (claimPipelinedProposal(simulation, time)) {
+          Proposal proposal = new Proposal(selectTransactions(time, proposalToCertify));
+          Message nextProposal = new ProposalMessage(getHeight() + 1, 0, proposal, this);
+          simulation.broadcast(this, nextProposal, time);
+        }
       }
     } else if (phase == Phase.SECOND_FINISHING) {
       for (Proposal softVotedProposal : softVotedProposals) {
         if (softVotedProposal != null &&
             currentCycleState.myNextVotedProposals.add(softVotedProposal)) {
-          Message nextVote = new NextVoteMessage(cycle, softVotedProposal);
+          Message nextVote = new NextVoteMessage(cycle, softVotedProposal, this);
           simulation.broadcast(this, nextVote, time);
         }
       }
       if (cycle > 0 && currentCycleState.myCertifiedProposal == null) {
         CycleState lastCycleState = getLastCycleState();
-        if (lastCycleState.getNextVotedProposals(simulation).contains(null)) {
+        if (lastCycleState.nextVotes.hasQuorum(null)) {
           if (currentCycleState.myNextVotedProposals.add(null)) {
-            Message nextVote = new NextVoteMessage(cycle, null);
+            Message nextVote = new NextVoteMessage(cycle, null, this);
             simulation.broadcast(this, nextVote, time);
           }
         }
@@ -106,51 +120,70 @@ class CorrectAlgorandNode extends Node {
   private void handleCertVoteMessage(Simulation simulation, double time,
       CertVoteMessage certVoteMessage) {
     CycleState messageCycleState = getCycleState(certVoteMessage.getCycle());
-    messageCycleState.addCertVote(certVoteMessage);
-    Set<Proposal> certifiedProposals = messageCycleState.getCertifiedProposals(simulation);
-
-    if (!certifiedProposals.isEmpty()) {
-      Proposal certifiedProposal = certifiedProposals.iterator().next();
+    Proposal certifiedProposal = certVoteMessage.getProposal();
+    if (messageCycleState.certVotes.addVote(certifiedProposal, certVoteMessage.getSenderId())) {
       if (certifiedProposal == null) {
         throw new AssertionError("Shouldn't have cert-votes for nil?");
       }
-      terminate(certifiedProposal, time);
+      decide(simulation, certifiedProposal, time);
     }
   }
 
+  private void decide(Simulation simulation, Proposal proposal, double time) {
+    cycleCount += cycle + 1;
+    if (!commit(proposal, time)) {
+      simulation.cancelTimer(this);
+      return;
+    }
+    // Begin the next height from scratch.
+    cycle = 0;
+    cycleStates.clear();
+    startProposal(simulation, time);
+    replayDeferredMessages(simulation, time);
+  }
+
+  /** The number of cycles this node has begun, over all the heights it decided. */
+  int getCycleCount() {
+    return cycleCount;
+  }
+
   private void handleNextVoteMessage(Simulation simulation, double time,
       NextVoteMessage nextVoteMessage) {
     CycleState messageCycleState = getCycleState(nextVoteMessage.getCycle());
-    messageCycleState.addNextVote(nextVoteMessage);
+    messageCycleState.nextVotes.addVote(
+        nextVoteMessage.getProposal(), nextVoteMessage.getSenderId());
     boolean currentCycle = cycle == nextVoteMessage.getCycle();
 
-    if (currentCycle && messageCycleState.hasNextVotedProposal(simulation)) {
-      while (getCurrentCycleState().hasNextVotedProposal(simulation)) {
-        Proposal nextVotedProposal = getCurrentCycleState()
-            .getNextVotedProposals(simulation).iterator().next();
+    if (currentCycle && messageCycleState.nextVotes.hasQuorum()) {
+      while (getCurrentCycleState().nextVotes.hasQuorum()) {
+        Proposal nextVotedProposal =
+            getCurrentCycleState().nextVotes.getQuorumProposals().get(0);
         ++cycle;
         getCurrentCycleState().startingValue = nextVotedProposal;
       }
+      cycleStates.releaseSettled(cycle - 1,
+          cycleState -> !cycleState.certVotes.couldReachQuorum(nodeCount));
       startProposal(simulation, time);
     }
   }
 
   private void startProposal(Simulation simulation, double time) {
     phase = Phase.PROPOSAL;
-    if (equals(simulation.getLeader(cycle))) {
-      Proposal proposal = new Proposal();
-      Message message = new ProposalMessage(cycle, proposal);
+    if (equals(simulation.getLeader(getHeight() + cycle))
+        && !(cycle == 0 && hasPipelinedProposal())) {
+      Proposal proposal = new Proposal(selectTransactions(time));
+      Message message = new ProposalMessage(cycle, proposal, this);
       simulation.broadcast(this, message, time);
     }
     resetTimeout(simulation, time);
   }
 
   private void doFiltering(Simulation simulation, double time) {
-    Set<Proposal> nextVotedProposals;
+    List<Proposal> nextVotedProposals;
     if (cycle > 0) {
-      nextVotedProposals = getLastCycleState().getNextVotedProposals(simulation);
+      nextVotedProposals = getLastCycleState().nextVotes.getQuorumProposals();
     } else {
-      nextVotedProposals = new HashSet<>();
+      nextVotedProposals = Collections.emptyList();
     }
 
     Proposal proposalToSoftVote = null;
@@ -159,11 +192,11 @@ class CorrectAlgorandNode extends Node {
         proposalToSoftVote = getCurrentCycleState().proposals.iterator().next();
       }
     } else if (cycle > 0 && !nextVotedProposals.isEmpty()) {
-      proposalToSoftVote = nextVotedProposals.iterator().next();
+      proposalToSoftVote = nextVotedProposals.get(0);
     }
 
     if (proposalToSoftVote != null) {
-      Message softVote = new SoftVoteMessage(cycle, proposalToSoftVote);
+      Message softVote = new SoftVoteMessage(cycle, proposalToSoftVote, this);
       simulation.broadcast(this, softVote, time);
     }
 
@@ -176,22 +209,21 @@ class CorrectAlgorandNode extends Node {
     if (getCurrentCycleState().myCertifiedProposal != null) {
       proposalToNextVote = getCurrentCycleState().myCertifiedProposal;
     } else if (cycle > 0
-        && getLastCycleState().getNextVotedProposals(simulation).contains(null)) {
+        && getLastCycleState().nextVotes.hasQuorum(null)) {
       proposalToNextVote = null;
     } else {
       proposalToNextVote = getCurrentCycleState().startingValue;
     }
 
     getCurrentCycleState().myNextVotedProposals.add(proposalToNextVote);
-    NextVoteMessage nextVote = new NextVoteMessage(cycle, proposalToNextVote);
+    NextVoteMessage nextVote = new NextVoteMessage(cycle, proposalToNextVote, this);
     simulation.broadcast(this, nextVote, time);
 
     phase = Phase.SECOND_FINISHING;
   }
 
   private void resetTimeout(Simulation simulation, double time) {
-    nextTimer = time + timeout;
-    simulation.scheduleEvent(new TimerEvent(nextTimer, this));
+    simulation.setTimer(this, time + timeout);
   }
 
   private CycleState getCurrentCycleState() {
@@ -203,7 +235,6 @@ class CorrectAlgorandNode extends Node {
   }
 
   private CycleState getCycleState(int c) {
-    cycleStates.putIfAbsent(c, new CycleState());
     return cycleStates.get(c);
   }
 
@@ -212,37 +243,9 @@ class CorrectAlgorandNode extends Node {
     private Set<Proposal> proposals = new HashSet<>();
     private Proposal myCertifiedProposal = null;
     private Set<Proposal> myNextVotedProposals = new HashSet<>();
-    private Map<Proposal, Integer> softVoteCounts = new HashMap<>();
-    private Map<Proposal, Integer> certVoteCounts = new HashMap<>();
-    private Map<Proposal, Integer> nextVoteCounts = new HashMap<>();
-
-    void addSoftVote(SoftVoteMessage softVote) {
-      softVoteCounts.merge(softVote.getProposal(), 1, Integer::sum);
-    }
-
-    void addCertVote(CertVoteMessage certVote) {
-      certVoteCounts.merge(certVote.getProposal(), 1, Integer::sum);
-    }
-
-    void addNextVote(NextVoteMessage nextVote) {
-      nextVoteCounts.merge(nextVote.getProposal(), 1, Integer::sum);
-    }
-
-    Set<Proposal> getSoftVotedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(softVoteCounts, quorumSize(simulation));
-    }
-
-    Set<Proposal> getCertifiedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(certVoteCounts, quorumSize(simulation));
-    }
-
-    Set<Proposal> getNextVotedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(nextVoteCounts, quorumSize(simulation));
-    }
-
-    boolean hasNextVotedProposal(Simulation simulation) {
-      return !getNextVotedProposals(simulation).isEmpty();
-    }
+    private QuorumTracker softVotes = new QuorumTracker(quorumSize);
+    private QuorumTracker certVotes = new QuorumTracker(quorumSize);
+    private QuorumTracker nextVotes = new QuorumTracker(quorumSize);
   }
 
   private int quorumSize(Simulation simulation) {
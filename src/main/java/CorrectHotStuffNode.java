@@ -0,0 +1,429 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A node running HotStuff, whose steps cost a linear number of messages rather than a quadratic
+ * one: votes are sent only to a leader, who broadcasts them aggregated into a single quorum
+ * certificate. Like Mir, it's responsive, moving on as soon as a leader has a quorum, and relies on
+ * timeouts only to replace a leader who fails.
+ *
+ * <p>In basic HotStuff, the leader of each view drives a proposal through the prepare, pre-commit
+ * and commit phases, collecting the votes of each phase itself. In chained HotStuff, each view has
+ * a single phase, whose votes go to the next leader, who certifies the block while proposing the
+ * next one. A block is committed once it heads a chain of three blocks with certificates from
+ * consecutive views.
+ */
+class CorrectHotStuffNode extends Node {
+  private final double initialTimeout;
+  private final boolean chained;
+  /** The current view number. Views are called cycles elsewhere. */
+  private int view = 0;
+  /**
+   * The number of views this node has left by timing out since it last committed a block, which
+   * timeouts back off by in chained HotStuff, whose views never start again from 0. In basic
+   * HotStuff, they back off by the view itself.
+   */
+  private int timedOutViews = 0;
+  /** In basic HotStuff, the number of views of the heights decided so far. */
+  private int viewCount = 0;
+  /**
+   * The observed state of each view whose votes may still matter. Earlier views are released,
+   * which matters most in chained HotStuff, whose views never start again from 0.
+   */
+  private final StateWindow<ViewState> viewStates = new StateWindow<>(ViewState::new);
+  /** The highest prepare certificate received, or in chained HotStuff any certificate. */
+  private QuorumCertificate highestCertificate;
+  /** The certificate this node is locked on, or null if it isn't locked. */
+  private QuorumCertificate lockedCertificate;
+  /** The latest view in which this node voted for a chained HotStuff block. */
+  private int lastVotedView = -1;
+  /** The latest chained HotStuff block committed, or null for the genesis block. */
+  private HotStuffBlock lastCommittedBlock;
+  private int quorumSize;
+  private int correctNodeCount;
+
+  /**
+   * @param chained whether to run chained HotStuff, where certificates are pipelined across views,
+   *     rather than basic HotStuff
+   */
+  CorrectHotStuffNode(EarthPosition position, double initialTimeout, boolean chained) {
+    super(position);
+    this.initialTimeout = initialTimeout;
+    this.chained = chained;
+  }
+
+  @Override void onStart(Simulation simulation) {
+    quorumSize = quorumSize(simulation);
+    correctNodeCount = simulation.getCorrectNodeCount();
+    beginHeight(simulation, 0);
+  }
+
+  private void beginHeight(Simulation simulation, double time) {
+    resetTimeout(simulation, time);
+    // The first view has no predecessor to certify, so its leader proposes right away.
+    if (equals(getLeader(simulation, 0)) && !hasPipelinedProposal()) {
+      propose(simulation, time);
+    }
+  }
+
+  @Override void onTimerEvent(TimerEvent timerEvent, Simulation simulation) {
+    if (hasTerminated()) {
+      return;
+    }
+
+    double time = timerEvent.getTime();
+
+    // The leader failed to make progress in time. Move to the next view, and tell its leader about
+    // the highest certificate we know of.
+    ++timedOutViews;
+    enterView(simulation, view + 1, time);
+    Message newView = new NewViewMessage(view, highestCertificate, this);
+    simulation.send(this, getLeader(simulation, view), newView, time);
+  }
+
+  @Override void onMessageEvent(MessageEvent messageEvent, Simulation simulation) {
+    if (hasTerminated()) {
+      return;
+    }
+
+    Message message = messageEvent.getMessage();
+    // Chained HotStuff numbers views across heights, which are simply the blocks it commits.
+    if (!chained && !acceptMessage(message)) {
+      return;
+    }
+    double time = messageEvent.getTime();
+
+    if (message instanceof HotStuffProposalMessage) {
+      if (chained) {
+        handleBlock(simulation, time, (HotStuffBlock) message.getProposal());
+      } else {
+        handleProposal(simulation, time, (HotStuffProposalMessage) message);
+      }
+    } else if (message instanceof QuorumCertificateMessage) {
+      handleCertificate(simulation, time, ((QuorumCertificateMessage) message).getCertificate());
+    } else if (message instanceof HotStuffVoteMessage) {
+      handleVote(simulation, time, (HotStuffVoteMessage) message);
+    } else if (message instanceof NewViewMessage) {
+      handleNewView(simulation, time, (NewViewMessage) message);
+    } else {
+      throw new AssertionError("Unexpected message: " + message);
+    }
+  }
+
+  /** Handle a basic HotStuff proposal, which begins the prepare phase of its view. */
+  private void handleProposal(Simulation simulation, double time,
+      HotStuffProposalMessage message) {
+    int messageView = message.getCycle();
+    if (messageView < view) {
+      return;
+    }
+    makeProgress(simulation, messageView, time);
+
+    // Vote for the proposal if it's safe: either it's the proposal we're locked on, or it's
+    // justified by a certificate newer than our lock, which shows we can unlock.
+    Proposal proposal = message.getProposal();
+    if (lockedCertificate == null
+        || lockedCertificate.getProposal() == proposal
+        || message.getJustify() != null && message.getJustify().isHigherThan(lockedCertificate)) {
+      sendVote(simulation, time, view, QuorumCertificate.Phase.PREPARE, proposal);
+    }
+  }
+
+  /** Handle a certificate broadcast by a basic HotStuff leader, which begins the next phase. */
+  private void handleCertificate(Simulation simulation, double time,
+      QuorumCertificate certificate) {
+    if (certificate.getPhase() == QuorumCertificate.Phase.COMMIT) {
+      // The proposal was committed. A commit certificate is final, whatever view it's from.
+      decide(simulation, certificate.getProposal(), time);
+      return;
+    }
+    if (certificate.getView() < view) {
+      return;
+    }
+    makeProgress(simulation, certificate.getView(), time);
+
+    if (certificate.getPhase() == QuorumCertificate.Phase.PREPARE) {
+      highestCertificate = certificate;
+    } else {
+      lockedCertificate = certificate;
+    }
+    sendVote(simulation, time, view, certificate.getPhase().next(),
+        certificate.getProposal());
+    if (certificate.getPhase() == QuorumCertificate.Phase.PRE_COMMIT
+        && claimPipelinedProposal(simulation, time)) {
+      Proposal proposal =
+          new Proposal(selectTransactions(time, certificate.getProposal()));
+      Message nextProposal =
+          new HotStuffProposalMessage(getHeight() + 1, 0, proposal, null, this);
+      simulation.broadcast(this, nextProposal, time);
+    }
+  }
+
+  /** Decide a proposal in basic HotStuff. */
+  private void decide(Simulation simulation, Proposal proposal, double time) {
+    viewCount += view + 1;
+    if (!commit(proposal, time)) {
+      simulation.cancelTimer(this);
+      return;
+    }
+    // Begin the next height from scratch.
+    view = 0;
+    viewStates.clear();
+    highestCertificate = null;
+    lockedCertificate = null;
+    beginHeight(simulation, time);
+    replayDeferredMessages(simulation, time);
+  }
+
+  /**
+   * The number of views this node has been through, over all the heights it decided. In chained
+   * HotStuff, that's the views up to the latest block committed.
+   */
+  int getViewCount() {
+    if (chained) {
+      return lastCommittedBlock == null ? 0 : lastCommittedBlock.getView() + 1;
+    }
+    return viewCount;
+  }
+
+  /** Handle a chained HotStuff block, updating our chain state and voting for it if it's safe. */
+  private void handleBlock(Simulation simulation, double time, HotStuffBlock block) {
+    // The block's certificate is valid whatever view the block is from, so the chain it completes
+    // is checked even for old blocks.
+    QuorumCertificate justify = block.getJustify();
+    if (justify != null) {
+      if (justify.isHigherThan(highestCertificate)) {
+        highestCertificate = justify;
+      }
+      HotStuffBlock certified = (HotStuffBlock) justify.getProposal();
+      // Read once, since another partition may cut the link once every node has committed it.
+      QuorumCertificate certifiedJustify = certified.getJustify();
+      HotStuffBlock parent =
+          certifiedJustify == null ? null : (HotStuffBlock) certifiedJustify.getProposal();
+      if (parent != null) {
+        // A two-chain: lock on the certified block's parent.
+        if (certifiedJustify.isHigherThan(lockedCertificate)) {
+          lockedCertificate = certifiedJustify;
+        }
+        HotStuffBlock grandparent = parent.getParent();
+        boolean uncommitted = grandparent != null
+            && (lastCommittedBlock == null || grandparent.getView() > lastCommittedBlock.getView());
+        if (uncommitted && certified.getView() == parent.getView() + 1
+            && parent.getView() == grandparent.getView() + 1) {
+          // A three-chain from consecutive views commits the grandparent, and with it the rest of
+          // its chain. Each block committed is a height.
+          if (!commitChain(grandparent, time)) {
+            simulation.cancelTimer(this);
+            return;
+          }
+          // Like a new height in basic HotStuff, this starts a fresh backoff.
+          timedOutViews = 0;
+        }
+      }
+    }
+
+    int blockView = block.getView();
+    if (blockView < view || blockView <= lastVotedView) {
+      return;
+    }
+    if (lockedCertificate == null
+        || block.extendsBlock((HotStuffBlock) lockedCertificate.getProposal())
+        || justify != null && justify.isHigherThan(lockedCertificate)) {
+      lastVotedView = blockView;
+      sendVote(simulation, time, blockView, QuorumCertificate.Phase.GENERIC, block);
+      // Our part in this view is done, so wait for the next leader's block.
+      enterView(simulation, blockView + 1, time);
+    } else {
+      enterView(simulation, blockView, time);
+    }
+  }
+
+  /**
+   * Commit {@code block} and any ancestors not yet committed, in order.
+   *
+   * @return whether this node should go on to decide more heights
+   */
+  private boolean commitChain(HotStuffBlock block, double time) {
+    List<HotStuffBlock> uncommitted = new ArrayList<>();
+    for (HotStuffBlock b = block; b != lastCommittedBlock; b = b.getParent()) {
+      uncommitted.add(b);
+    }
+    lastCommittedBlock = block;
+    for (int i = uncommitted.size() - 1; i >= 0; --i) {
+      HotStuffBlock committed = uncommitted.get(i);
+      committed.recordCommit(correctNodeCount);
+      if (!commit(committed, time)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void sendVote(Simulation simulation, double time, int voteView,
+      QuorumCertificate.Phase phase, Proposal proposal) {
+    Message vote = new HotStuffVoteMessage(voteView, phase, proposal, this);
+    // In chained HotStuff, the next leader aggregates the votes, while proposing on top of them.
+    int aggregatorView = chained ? voteView + 1 : voteView;
+    simulation.send(this, getLeader(simulation, aggregatorView), vote, time);
+  }
+
+  /** Handle a vote as the leader who aggregates it. */
+  private void handleVote(Simulation simulation, double time, HotStuffVoteMessage vote) {
+    int messageView = vote.getCycle();
+    if (viewStates.isReleased(messageView)) {
+      return;
+    }
+    QuorumCertificate.Phase phase = vote.getPhase();
+    ViewState viewState = getViewState(messageView);
+    if (!viewState.getVotes(phase).addVote(vote.getProposal(), vote.getSenderId())) {
+      return;
+    }
+
+    // The vote completed a quorum.
+    QuorumCertificate certificate =
+        new QuorumCertificate(messageView, phase, vote.getProposal());
+    if (chained) {
+      if (certificate.isHigherThan(highestCertificate)) {
+        highestCertificate = certificate;
+      }
+      int nextView = messageView + 1;
+      if (nextView >= view && !getViewState(nextView).proposed) {
+        enterView(simulation, nextView, time);
+        propose(simulation, time);
+      }
+    } else if (messageView == view) {
+      simulation.broadcast(this, new QuorumCertificateMessage(certificate, this), time);
+    }
+  }
+
+  /** Handle a new-view message as the leader of its view. */
+  private void handleNewView(Simulation simulation, double time, NewViewMessage newView) {
+    int messageView = newView.getCycle();
+    QuorumCertificate certificate = newView.getHighestCertificate();
+    if (certificate != null && certificate.isHigherThan(highestCertificate)) {
+      highestCertificate = certificate;
+    }
+    if (viewStates.isReleased(messageView)) {
+      return;
+    }
+    ViewState viewState = getViewState(messageView);
+    if (viewState.newViewSenders.get(newView.getSenderId())) {
+      return;
+    }
+    viewState.newViewSenders.set(newView.getSenderId());
+    if (++viewState.newViewCount == quorumSize && messageView >= view && !viewState.proposed) {
+      // A quorum has moved to this view, and told us the highest certificate among them.
+      enterView(simulation, messageView, time);
+      propose(simulation, time);
+    }
+  }
+
+  /** Propose as the leader of the current view, extending the highest certificate we know of. */
+  private void propose(Simulation simulation, double time) {
+    getCurrentViewState().proposed = true;
+    Proposal proposal;
+    if (chained) {
+      // Leave out the transactions of the blocks being extended which aren't yet committed. Views
+      // increase along a chain, so the search stops at the committed frontier.
+      int committedView = lastCommittedBlock == null ? -1 : lastCommittedBlock.getView();
+      List<Proposal> uncommitted = new ArrayList<>();
+      if (highestCertificate != null) {
+        for (HotStuffBlock block = (HotStuffBlock) highestCertificate.getProposal();
+            block != null && block.getView() > committedView; block = block.getParent()) {
+          uncommitted.add(block);
+        }
+      }
+      proposal = new HotStuffBlock(view, highestCertificate,
+          selectTransactions(time, uncommitted.toArray(new Proposal[0])));
+    } else if (highestCertificate != null) {
+      // A proposal may have been committed by some node, so we must repropose it.
+      proposal = highestCertificate.getProposal();
+    } else {
+      proposal = new Proposal(selectTransactions(time));
+    }
+    Message message = new HotStuffProposalMessage(view, proposal, highestCertificate, this);
+    simulation.broadcast(this, message, time);
+  }
+
+  /** Move to {@code newView}, if it's later than the current view, and restart the timer. */
+  private void enterView(Simulation simulation, int newView, double time) {
+    if (newView > view) {
+      view = newView;
+      releaseViews();
+      resetTimeout(simulation, time);
+    }
+  }
+
+  /**
+   * Move to {@code newView}, which isn't earlier than the current view, and restart the timer even
+   * if it's the current view, since its leader has just made progress. This gives each phase of
+   * basic HotStuff its own timeout, like a Tendermint step, rather than one for the whole view.
+   */
+  private void makeProgress(Simulation simulation, int newView, double time) {
+    view = newView;
+    releaseViews();
+    resetTimeout(simulation, time);
+  }
+
+  /**
+   * Release the views whose votes can no longer matter. In basic HotStuff, a leader only acts on
+   * votes for the current view. In chained HotStuff, a quorum in the previous view may still let
+   * this node propose in the current one, but a quorum in a view no later than the highest
+   * certificate's wouldn't give a higher certificate.
+   */
+  private void releaseViews() {
+    if (!chained) {
+      viewStates.release(view);
+    } else if (highestCertificate != null) {
+      viewStates.release(Math.min(view - 1, highestCertificate.getView() + 1));
+    }
+  }
+
+  /** The leader of view {@code v} of the current height. */
+  private Node getLeader(Simulation simulation, int v) {
+    return chained ? simulation.getLeader(v) : simulation.getLeader(getHeight() + v);
+  }
+
+  private void resetTimeout(Simulation simulation, double time) {
+    simulation.setTimer(this, time + getCurrentTimeout());
+  }
+
+  private double getCurrentTimeout() {
+    // Exponential backoff, over the views without progress. Views which a leader moved on from
+    // don't count, so that a successful chain of views keeps the same timeout.
+    int numIncreases = Math.min(chained ? timedOutViews : view, 30);
+
+    double multiplier = 1 << numIncreases;
+    return initialTimeout * multiplier;
+  }
+
+  private static int quorumSize(Simulation simulation) {
+    int nodes = simulation.getNetwork().getNodes().size();
+    return nodes * 2 / 3 + 1;
+  }
+
+  private ViewState getCurrentViewState() {
+    return getViewState(view);
+  }
+
+  private ViewState getViewState(int v) {
+    return viewStates.get(v);
+  }
+
+  /** The state of a view, which is only used while acting as a leader. */
+  private class ViewState {
+    /** The votes received for each phase, indexed by phase. */
+    final QuorumTracker[] votes = new QuorumTracker[QuorumCertificate.Phase.values().length];
+    final BitSet newViewSenders = new BitSet();
+    int newViewCount = 0;
+    boolean proposed = false;
+
+    QuorumTracker getVotes(QuorumCertificate.Phase phase) {
+      if (votes[phase.ordinal()] == null) {
+        votes[phase.ordinal()] = new QuorumTracker(quorumSize);
+      }
+      return votes[phase.ordinal()];
+    }
+  }
+}
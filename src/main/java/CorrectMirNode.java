@@ -1,18 +1,24 @@
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 class CorrectMirNode extends Node {
   /** The current cycle number. */
   private int cycle = 0;
-  /** The observed state of each cycle. */
-  private final Map<Integer, CycleState> cycleStates = new HashMap<>();
+  /** The number of cycles of the heights decided so far. */
+  private int cycleCount = 0;
+  /**
+   * The observed state of each cycle from the current one on. Earlier cycles are never looked at
+   * again, since only the current cycle's votes can decide, so they're released.
+   */
+  private final StateWindow<CycleState> cycleStates =
+      new StateWindow<>(() -> new CycleState(this.quorumSize, this.nodeCount));
   /** The current round number within the current cycle. Round 0 is the proposal step. */
   private int round = 0;
 
   private double initialTimeout;
-  private double nextTimer;
+  private int nodeCount;
+  private int quorumSize;
 
   CorrectMirNode(EarthPosition position, double initialTimeout) {
     super(position);
@@ -20,6 +26,8 @@ class CorrectMirNode extends Node {
   }
 
   @Override public void onStart(Simulation simulation) {
+    nodeCount = simulation.getNetwork().getNodes().size();
+    quorumSize = quorumSize(simulation);
     vote(simulation, 0);
     resetTimeout(simulation, 0);
   }
@@ -30,11 +38,6 @@ class CorrectMirNode extends Node {
     }
 
     double time = timerEvent.getTime();
-    if (time != nextTimer) {
-      // It's a stale timer; we must have made the relevant state transition based on observed
-      // messages rather than a timer. Ignore it.
-      return;
-    }
 
     ++round;
     vote(simulation, time);
@@ -47,6 +50,9 @@ class CorrectMirNode extends Node {
     }
 
     Message message = messageEvent.getMessage();
+    if (!acceptMessage(message) || cycleStates.isReleased(message.getCycle())) {
+      return;
+    }
     int messageCycle = message.getCycle();
     boolean currentCycle = message.getCycle() == cycle;
     CycleState messageCycleState = getCycleState(messageCycle);
@@ -66,14 +72,15 @@ class CorrectMirNode extends Node {
     } else {
       MirVoteMessage voteMessage = (MirVoteMessage) message;
       int messageRound = voteMessage.getRound();
+      if (messageCycleState.roundStates.isReleased(messageRound)) {
+        return;
+      }
       boolean currentRound = messageRound == round;
-      messageCycleState.roundStates.putIfAbsent(messageRound, new RoundState());
-      RoundState roundState = messageCycleState.roundStates.get(messageRound);
+      RoundState roundState = messageCycleState.getRoundState(messageRound);
 
       if (voteMessage instanceof PrepareVoteMessage) {
         messageCycleState.addPrepareVote((PrepareVoteMessage) voteMessage);
-        Set<Proposal> preparedProposals = roundState.getPreparedProposals(simulation);
-        if (currentCycle && currentRound && !preparedProposals.isEmpty()) {
+        if (currentCycle && currentRound && roundState.prepareVotes.hasQuorum()) {
           // A proposal was prepared. Move to the next round and vote to commit it.
           ++round;
           vote(simulation, time);
@@ -81,22 +88,22 @@ class CorrectMirNode extends Node {
         }
       } else {
         messageCycleState.addCommitVote((CommitVoteMessage) voteMessage);
-        Set<Proposal> preparedProposals = roundState.getPreparedProposals(simulation);
-        Set<Proposal> committedProposals = roundState.getCommittedProposals(simulation);
+        List<Proposal> committedProposals = roundState.commitVotes.getQuorumProposals();
         if (currentCycle && !committedProposals.isEmpty()) {
-          Proposal committedProposal = committedProposals.iterator().next();
+          Proposal committedProposal = committedProposals.get(0);
           if (committedProposal != null) {
-            terminate(committedProposal, time);
+            decide(simulation, committedProposal, time);
           } else {
             // Nil was committed. Transition to the next cycle.
             round = 0;
-            while (getCurrentCycleState().hasCommit(simulation)) {
+            while (getCurrentCycleState().hasCommit) {
               ++cycle;
             }
+            cycleStates.release(cycle);
             vote(simulation, time);
             resetTimeout(simulation, time);
           }
-        } else if (currentCycle && currentRound && !preparedProposals.isEmpty()) {
+        } else if (currentCycle && currentRound && roundState.prepareVotes.hasQuorum()) {
           // A proposal was prepared. Move to the next round and vote to commit it.
           ++round;
           vote(simulation, time);
@@ -106,30 +113,59 @@ class CorrectMirNode extends Node {
     }
   }
 
+  private void decide(Simulation simulation, Proposal proposal, double time) {
+    cycleCount += cycle + 1;
+    if (!commit(proposal, time)) {
+      simulation.cancelTimer(this);
+      return;
+    }
+    // Begin the next height from scratch.
+    cycle = 0;
+    round = 0;
+    cycleStates.clear();
+    vote(simulation, time);
+    resetTimeout(simulation, time);
+    replayDeferredMessages(simulation, time);
+  }
+
+  /** The number of cycles this node has begun, over all the heights it decided. */
+  int getCycleCount() {
+    return cycleCount;
+  }
+
   private void vote(Simulation simulation, double time) {
-    Message vote = getVote(simulation);
+    // Only the previous round is looked at specially, so settled rounds before it can go.
+    getCurrentCycleState().releaseRounds(round - 1);
+    Message vote = getVote(simulation, time);
     if (vote != null) {
       simulation.broadcast(this, vote, time);
+      if (vote instanceof CommitVoteMessage && vote.getProposal() != null
+          && claimPipelinedProposal(simulation, time)) {
+        Proposal proposal = new Proposal(selectTransactions(time, vote.getProposal()));
+        Message nextProposal = new ProposalMessage(getHeight() + 1, 0, proposal, this);
+        simulation.broadcast(this, nextProposal, time);
+      }
     }
   }
 
-  private Message getVote(Simulation simulation) {
+  private Message getVote(Simulation simulation, double time) {
     if (round == 0) {
       // Proposal step.
-      if (equals(simulation.getLeader(cycle))) {
-        Proposal proposal = new Proposal();
-        return new ProposalMessage(cycle, proposal);
+      if (equals(simulation.getLeader(getHeight() + cycle))
+          && !(cycle == 0 && hasPipelinedProposal())) {
+        Proposal proposal = new Proposal(selectTransactions(time));
+        return new ProposalMessage(cycle, proposal, this);
       } else {
         return null;
       }
     } else {
       // Search for the latest proposal that was prepared, if any.
-      for (int prevRound = round - 1; prevRound > 0; --prevRound) {
-        RoundState prevRoundState = getCurrentCycleState().roundStates
-            .getOrDefault(prevRound, new RoundState());
-        Set<Proposal> prevPreparedProposals = prevRoundState.getPreparedProposals(simulation);
-        if (!prevPreparedProposals.isEmpty()) {
-          Proposal preparedProposal = prevPreparedProposals.iterator().next();
+      CycleState cycleState = getCurrentCycleState();
+      int firstRound = Math.max(cycleState.roundStates.getBase(), 1);
+      for (int prevRound = round - 1; prevRound >= firstRound; --prevRound) {
+        RoundState prevRoundState = cycleState.roundStates.find(prevRound);
+        if (prevRoundState != null && prevRoundState.prepareVotes.hasQuorum()) {
+          Proposal preparedProposal = prevRoundState.prepareVotes.getQuorumProposals().get(0);
           if (prevRound == round - 1) {
             return new CommitVoteMessage(cycle, round, preparedProposal, this);
           } else {
@@ -137,6 +173,9 @@ class CorrectMirNode extends Node {
           }
         }
       }
+      if (cycleState.releasedPreparedRound > 0) {
+        return new PrepareVoteMessage(cycle, round, cycleState.releasedPreparedProposal, this);
+      }
 
       // No proposal has been prepared. Fall back to whatever proposal we've observed if there was
       // exactly one, else nil.
@@ -151,8 +190,7 @@ class CorrectMirNode extends Node {
   }
 
   private void resetTimeout(Simulation simulation, double time) {
-    nextTimer = time + getCurrentTimeout();
-    simulation.scheduleEvent(new TimerEvent(nextTimer, this));
+    simulation.setTimer(this, time + getCurrentTimeout());
   }
 
   private double getCurrentTimeout() {
@@ -180,55 +218,97 @@ class CorrectMirNode extends Node {
   }
 
   private CycleState getCycleState(int c) {
-    cycleStates.putIfAbsent(c, new CycleState());
     return cycleStates.get(c);
   }
 
   private static class CycleState {
+    final int quorumSize;
+    final int nodeCount;
+
     /** Proposals received within this cycle. */
     final Set<Proposal> proposals = new HashSet<>();
 
-    /** The state of each round within this cycle. */
-    final Map<Integer, RoundState> roundStates = new HashMap<>();
+    /**
+     * The state of each round within this cycle from the previous one on, and of any earlier rounds
+     * whose votes could still reach a quorum, since a commit quorum in any round decides.
+     */
+    final StateWindow<RoundState> roundStates;
 
-    void addPrepareVote(PrepareVoteMessage prepareVote) {
-      roundStates.putIfAbsent(prepareVote.getRound(), new RoundState());
-      roundStates.get(prepareVote.getRound()).prepareVoteCounts.merge(
-          prepareVote.getProposal(), 1, Integer::sum);
-    }
+    /**
+     * The latest released round in which a proposal (possibly nil) was prepared, or 0 if there's
+     * none, and that proposal.
+     */
+    int releasedPreparedRound = 0;
+    Proposal releasedPreparedProposal;
 
-    void addCommitVote(CommitVoteMessage commitVote) {
-      roundStates.putIfAbsent(commitVote.getRound(), new RoundState());
-      roundStates.get(commitVote.getRound()).commitVoteCounts.merge(
-          commitVote.getProposal(), 1, Integer::sum);
+    /** Whether any round within this cycle has committed a proposal (possibly nil). */
+    boolean hasCommit = false;
+
+    CycleState(int quorumSize, int nodeCount) {
+      this.quorumSize = quorumSize;
+      this.nodeCount = nodeCount;
+      this.roundStates = new StateWindow<>(() -> new RoundState(quorumSize));
     }
 
-    boolean hasCommit(Simulation simulation) {
-      return roundStates.values().stream()
-          .anyMatch(roundState -> roundState.hasCommit(simulation));
+    /**
+     * Release the rounds below {@code limit} whose votes are settled, keeping only what later
+     * rounds need from them: the latest prepared proposal.
+     */
+    void releaseRounds(int limit) {
+      for (int r = roundStates.getBase(); r < limit; ++r) {
+        RoundState roundState = roundStates.find(r);
+        if (roundState != null) {
+          if (!roundState.isSettled(nodeCount)) {
+            return;
+          }
+          if (roundState.prepareVotes.hasQuorum()) {
+            releasedPreparedRound = r;
+            releasedPreparedProposal = roundState.prepareVotes.getQuorumProposals().get(0);
+          }
+        }
+        roundStates.release(r + 1);
+      }
     }
-  }
 
-  private static class RoundState {
-    final Map<Proposal, Integer> prepareVoteCounts = new HashMap<>();
-    final Map<Proposal, Integer> commitVoteCounts = new HashMap<>();
+    RoundState getRoundState(int round) {
+      return roundStates.get(round);
+    }
 
-    Map<Proposal, Integer> getCombinedVoteCounts() {
-      Map<Proposal, Integer> result = new HashMap<>(prepareVoteCounts);
-      commitVoteCounts.forEach((k, v) -> result.merge(k, v, Integer::sum));
-      return result;
+    void addPrepareVote(PrepareVoteMessage prepareVote) {
+      getRoundState(prepareVote.getRound()).prepareVotes.addVote(
+          prepareVote.getProposal(), prepareVote.getSenderId());
     }
 
-    Set<Proposal> getPreparedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(getCombinedVoteCounts(), quorumSize(simulation));
+    void addCommitVote(CommitVoteMessage commitVote) {
+      RoundState roundState = getRoundState(commitVote.getRound());
+      // A commit vote also counts towards preparing its proposal. A node's prepare and commit votes
+      // for the same proposal in the same round are only counted once.
+      roundState.prepareVotes.addVote(commitVote.getProposal(), commitVote.getSenderId());
+      if (roundState.commitVotes.addVote(commitVote.getProposal(), commitVote.getSenderId())) {
+        hasCommit = true;
+      }
     }
+  }
+
+  private static class RoundState {
+    /** Prepare and commit votes, either of which counts towards preparing a proposal. */
+    final QuorumTracker prepareVotes;
+    final QuorumTracker commitVotes;
 
-    Set<Proposal> getCommittedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(commitVoteCounts, quorumSize(simulation));
+    RoundState(int quorumSize) {
+      prepareVotes = new QuorumTracker(quorumSize);
+      commitVotes = new QuorumTracker(quorumSize);
     }
 
-    boolean hasCommit(Simulation simulation) {
-      return !getCommittedProposals(simulation).isEmpty();
+    /**
+     * Whether no vote still to arrive could give any proposal, including nil, a quorum of either
+     * kind, if each of {@code nodeCount} nodes votes once. Every vote counts towards preparing, so
+     * a node whose prepare vote has arrived won't send a commit vote.
+     */
+    boolean isSettled(int nodeCount) {
+      int prepareOnlyCount = prepareVotes.getVoteCount() - commitVotes.getVoteCount();
+      return !prepareVotes.couldAnyReachQuorum(nodeCount)
+          && !commitVotes.couldAnyReachQuorum(nodeCount - prepareOnlyCount);
     }
   }
 }
@@ -1,21 +1,49 @@
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * A node running Tendermint. In the original version, each step lasts until its timer fires. In the
+ * responsive version, as in modern Tendermint, a node moves on as soon as it has what the step was
+ * waiting for: a proposal, 2/3 pre-votes or 2/3 nil pre-commits. Timeouts then only matter when
+ * those don't arrive, e.g. because the leader has failed.
+ */
 class CorrectTendermintNode extends Node {
+  private final boolean responsive;
+  private final double initialTimeout;
   private int cycle = 0;
-  private Map<Integer, CycleState> cycleStates = new HashMap<>();
+  /** The number of cycles of the heights decided so far. */
+  private int cycleCount = 0;
+  /**
+   * The observed state of each cycle from the previous one on, and of any earlier cycles whose
+   * votes aren't yet settled. Messages for released cycles can't change anything, so are dropped.
+   */
+  private final StateWindow<CycleState> cycleStates = new StateWindow<>(CycleState::new);
+  /** The proposal of the latest released cycle which had 2/3 pre-votes for one, if any. */
+  private Proposal releasedPreVotedProposal;
   private ProtocolState protocolState;
   private double timeout;
-  private double nextTimer;
+  private int nodeCount;
+  private int quorumSize;
 
   CorrectTendermintNode(EarthPosition position, double initialTimeout) {
+    this(position, initialTimeout, false);
+  }
+
+  /**
+   * @param responsive whether to advance on receiving a proposal or a quorum, using timeouts only
+   *     as a fallback
+   */
+  CorrectTendermintNode(EarthPosition position, double initialTimeout, boolean responsive) {
     super(position);
+    this.initialTimeout = initialTimeout;
     this.timeout = initialTimeout;
+    this.responsive = responsive;
   }
 
   @Override public void onStart(Simulation simulation) {
+    nodeCount = simulation.getNetwork().getNodes().size();
+    quorumSize = quorumSize(simulation);
     beginProposal(simulation, 0);
   }
 
@@ -25,11 +53,6 @@ class CorrectTendermintNode extends Node {
     }
 
     double time = timerEvent.getTime();
-    if (time != nextTimer) {
-      // It's a stale timer; we must have made the relevant state transition based on observed
-      // messages rather than a timer. Ignore it.
-      return;
-    }
 
     switch (protocolState) {
       case PROPOSAL:
@@ -39,10 +62,7 @@ class CorrectTendermintNode extends Node {
         beginPreCommit(simulation, time);
         break;
       case PRE_COMMIT:
-        ++cycle;
-        // Exponential backoff.
-        timeout *= 2;
-        beginProposal(simulation, time);
+        beginNextCycle(simulation, time);
         break;
       default:
         throw new AssertionError("Unexpected protocol state");
@@ -55,57 +75,127 @@ class CorrectTendermintNode extends Node {
     }
 
     Message message = messageEvent.getMessage();
+    if (!acceptMessage(message) || cycleStates.isReleased(message.getCycle())) {
+      return;
+    }
     double time = messageEvent.getTime();
-    cycleStates.putIfAbsent(message.getCycle(), new CycleState());
-    CycleState cycleState = cycleStates.get(message.getCycle());
+    CycleState cycleState = getCycleState(message.getCycle());
 
     if (message instanceof ProposalMessage) {
       cycleState.proposals.add(message.getProposal());
     } else if (message instanceof PreVoteMessage) {
-      cycleState.preVoteCounts.merge(message.getProposal(), 1, Integer::sum);
+      cycleState.preVotes.addVote(message.getProposal(), message.getSenderId());
     } else if (message instanceof PreCommitMessage) {
-      cycleState.preCommitCounts.merge(message.getProposal(), 1, Integer::sum);
-      Set<Proposal> committedProposals = cycleState.getCommittedProposals(simulation);
-      if (!committedProposals.isEmpty()) {
-        Proposal committedProposal = committedProposals.iterator().next();
-        if (committedProposal != null) {
-          terminate(committedProposal, time);
-        }
+      Proposal proposal = message.getProposal();
+      if (cycleState.preCommits.addVote(proposal, message.getSenderId()) && proposal != null) {
+        // The proposal just received 2/3 pre-commits.
+        decide(simulation, proposal, time);
+        return;
       }
     } else {
       throw new AssertionError("Unexpected message: " + message);
     }
+
+    if (responsive && message.getCycle() == cycle) {
+      advanceIfReady(simulation, time);
+    }
+  }
+
+  /**
+   * In responsive mode, move past the current step if it has nothing left to wait for. This is
+   * checked both when a message arrives and when a step begins, since messages for a step may
+   * arrive before this node reaches it.
+   */
+  private void advanceIfReady(Simulation simulation, double time) {
+    CycleState cycleState = getCurrentCycleState();
+    switch (protocolState) {
+      case PROPOSAL:
+        if (!cycleState.proposals.isEmpty()) {
+          beginPreVote(simulation, time);
+        }
+        break;
+      case PRE_VOTE:
+        // Whether the quorum is for a proposal or nil, the pre-commit is determined.
+        if (cycleState.preVotes.hasQuorum()) {
+          beginPreCommit(simulation, time);
+        }
+        break;
+      case PRE_COMMIT:
+        // A quorum of nil pre-commits means nothing can be decided in this cycle.
+        if (cycleState.preCommits.hasQuorum(null)) {
+          beginNextCycle(simulation, time);
+        }
+        break;
+      default:
+        throw new AssertionError("Unexpected protocol state");
+    }
+  }
+
+  private void decide(Simulation simulation, Proposal proposal, double time) {
+    cycleCount += cycle + 1;
+    if (!commit(proposal, time)) {
+      simulation.cancelTimer(this);
+      return;
+    }
+    // Begin the next height from scratch.
+    cycle = 0;
+    cycleStates.clear();
+    releasedPreVotedProposal = null;
+    timeout = initialTimeout;
+    beginProposal(simulation, time);
+    replayDeferredMessages(simulation, time);
+  }
+
+  /** The number of cycles this node has begun, over all the heights it decided. */
+  int getCycleCount() {
+    return cycleCount;
+  }
+
+  private void beginNextCycle(Simulation simulation, double time) {
+    ++cycle;
+    releaseCycles(cycle - 1);
+    // Exponential backoff.
+    timeout *= 2;
+    beginProposal(simulation, time);
   }
 
   private void beginProposal(Simulation simulation, double time) {
     protocolState = ProtocolState.PROPOSAL;
-    if (equals(simulation.getLeader(cycle))) {
-      Proposal proposal = new Proposal();
-      Message message = new ProposalMessage(cycle, proposal);
+    if (equals(simulation.getLeader(getHeight() + cycle))
+        && !(cycle == 0 && hasPipelinedProposal())) {
+      Proposal proposal = new Proposal(selectTransactions(time));
+      Message message = new ProposalMessage(cycle, proposal, this);
       simulation.broadcast(this, message, time);
     }
     resetTimeout(simulation, time);
+    if (responsive) {
+      advanceIfReady(simulation, time);
+    }
   }
 
   private void beginPreVote(Simulation simulation, double time) {
     protocolState = ProtocolState.PRE_VOTE;
-    Message message = new PreVoteMessage(cycle, getProposalToPreVote(simulation));
+    Message message = new PreVoteMessage(cycle, getProposalToPreVote(), this);
     simulation.broadcast(this, message, time);
     resetTimeout(simulation, time);
+    if (responsive) {
+      advanceIfReady(simulation, time);
+    }
   }
 
-  private Proposal getProposalToPreVote(Simulation simulation) {
+  private Proposal getProposalToPreVote() {
     // Find the latest proposal which had 2/3 pre-votes, if any. If there is one, then either that's
     // the proposal we're locked on, or we were locked on an older proposal, in which case that
     // proposal unlocks us. Either way, we're able to vote for that proposal.
-    for (int prevCycle = cycle - 1; prevCycle >= 0; --prevCycle) {
-      Set<Proposal> preVotedProposals = getCycleState(prevCycle).getPreVotedProposals(simulation);
-      for (Proposal preVotedProposal : preVotedProposals) {
-        if (preVotedProposal != null) {
-          return preVotedProposal;
-        }
+    for (int prevCycle = cycle - 1; prevCycle >= cycleStates.getBase(); --prevCycle) {
+      Proposal preVotedProposal = getCycleState(prevCycle).getPreVotedProposal();
+      if (preVotedProposal != null) {
+        return preVotedProposal;
       }
     }
+    if (releasedPreVotedProposal != null) {
+      return releasedPreVotedProposal;
+    }
 
     // If we got here, then no proposal has received 2/3 pre-votes, so we never would have
     // pre-committed any proposal. Thus, we're not locked so we're free to vote for whatever
@@ -120,21 +210,48 @@ class CorrectTendermintNode extends Node {
 
   private void beginPreCommit(Simulation simulation, double time) {
     protocolState = ProtocolState.PRE_COMMIT;
-    Set<Proposal> preVotedProposals = getCurrentCycleState().getPreVotedProposals(simulation);
+    List<Proposal> preVotedProposals = getCurrentCycleState().preVotes.getQuorumProposals();
     Message message;
     if (preVotedProposals.isEmpty()) {
-      message = new PreCommitMessage(cycle, null);
+      message = new PreCommitMessage(cycle, null, this);
     } else {
-      Proposal proposal = preVotedProposals.iterator().next();
-      message = new PreCommitMessage(cycle, proposal);
+      Proposal proposal = preVotedProposals.get(0);
+      message = new PreCommitMessage(cycle, proposal, this);
     }
     simulation.broadcast(this, message, time);
+    if (message.getProposal() != null && claimPipelinedProposal(simulation, time)) {
+      Proposal proposal = new Proposal(selectTransactions(time, message.getProposal()));
+      Message nextProposal = new ProposalMessage(getHeight() + 1, 0, proposal, this);
+      simulation.broadcast(this, nextProposal, time);
+    }
     resetTimeout(simulation, time);
+    if (responsive) {
+      advanceIfReady(simulation, time);
+    }
   }
 
   private void resetTimeout(Simulation simulation, double time) {
-    nextTimer = time + timeout;
-    simulation.scheduleEvent(new TimerEvent(nextTimer, this));
+    simulation.setTimer(this, time + timeout);
+  }
+
+  /**
+   * Release the cycles below {@code limit} whose votes are settled, keeping only what later cycles
+   * need from them: the latest proposal with 2/3 pre-votes. A cycle whose pre-commits could still
+   * reach a quorum is kept, along with every later one, since that quorum would decide.
+   */
+  private void releaseCycles(int limit) {
+    for (int c = cycleStates.getBase(); c < limit; ++c) {
+      CycleState cycleState = cycleStates.find(c);
+      if (cycleState != null) {
+        if (!cycleState.isSettled()) {
+          return;
+        }
+        if (cycleState.getPreVotedProposal() != null) {
+          releasedPreVotedProposal = cycleState.getPreVotedProposal();
+        }
+      }
+      cycleStates.release(c + 1);
+    }
   }
 
   private CycleState getCurrentCycleState() {
@@ -142,7 +259,6 @@ class CorrectTendermintNode extends Node {
   }
 
   private CycleState getCycleState(int c) {
-    cycleStates.putIfAbsent(c, new CycleState());
     return cycleStates.get(c);
   }
 
@@ -153,15 +269,22 @@ class CorrectTendermintNode extends Node {
 
   private class CycleState {
     final Set<Proposal> proposals = new HashSet<>();
-    final Map<Proposal, Integer> preVoteCounts = new HashMap<>();
-    final Map<Proposal, Integer> preCommitCounts = new HashMap<>();
+    final QuorumTracker preVotes = new QuorumTracker(quorumSize);
+    final QuorumTracker preCommits = new QuorumTracker(quorumSize);
 
-    Set<Proposal> getPreVotedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(preVoteCounts, quorumSize(simulation));
+    /** Whether no vote still to arrive could give a proposal other than nil 2/3 of either. */
+    boolean isSettled() {
+      return !preVotes.couldReachQuorum(nodeCount) && !preCommits.couldReachQuorum(nodeCount);
     }
 
-    Set<Proposal> getCommittedProposals(Simulation simulation) {
-      return Util.keysWithMinCount(preCommitCounts, quorumSize(simulation));
+    /** The first proposal, other than nil, to get 2/3 pre-votes, or null if there's none. */
+    Proposal getPreVotedProposal() {
+      for (Proposal preVotedProposal : preVotes.getQuorumProposals()) {
+        if (preVotedProposal != null) {
+          return preVotedProposal;
+        }
+      }
+      return null;
     }
   }
 
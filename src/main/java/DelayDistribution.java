@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The distribution of a link's delay, as a multiple of its best-case latency. A message's latency
+ * is its link's best-case latency times {@code 1 + x}, where x is the extra delay drawn from this
+ * distribution, so the best case is never beaten.
+ *
+ * <p>A sample is drawn for every message, so every distribution transforms a single uniform
+ * number, and none allocates. Continuous distributions are sampled from a precomputed table of
+ * their inverse CDF, and histograms with an alias table.
+ */
+abstract class DelayDistribution {
+  /** The original model, in which the extra delay is uniform in [0, 1). */
+  static final DelayDistribution UNIFORM = new DelayDistribution() {
+    @Override double sampleAt(double u) {
+      return u;
+    }
+  };
+
+  /** Draw an extra delay, as a multiple of the best-case latency. */
+  final double sample(RandomStream random) {
+    return sampleAt(random.nextDouble());
+  }
+
+  /** The extra delay drawn for the uniform number {@code u} in [0, 1). */
+  abstract double sampleAt(double u);
+
+  /**
+   * This distribution, but with a spike of {@code spikeDelay} extra delay, again as a multiple of
+   * the best-case latency, with probability {@code spikeProbability}.
+   */
+  DelayDistribution withSpikes(double spikeProbability, double spikeDelay) {
+    if (!(spikeProbability >= 0 && spikeProbability <= 1) || !(spikeDelay >= 0)) {
+      throw new IllegalArgumentException("Need a spike probability in [0, 1] and delay >= 0");
+    }
+    DelayDistribution base = this;
+    return new DelayDistribution() {
+      @Override double sampleAt(double u) {
+        // The rest of the uniform number is rescaled for the base distribution.
+        return u < spikeProbability
+            ? spikeDelay : base.sampleAt((u - spikeProbability) / (1 - spikeProbability));
+      }
+    };
+  }
+
+  /** A log-normal extra delay, with the given median and shape (the log's standard deviation). */
+  static DelayDistribution logNormal(double median, double sigma) {
+    if (!(median > 0) || !(sigma >= 0)) {
+      throw new IllegalArgumentException("Need a positive median and nonnegative sigma");
+    }
+    return new InverseCdfTable(u -> median * Math.exp(sigma * inverseNormalCdf(u)));
+  }
+
+  /**
+   * A Pareto extra delay, shifted to start at 0 (a Lomax distribution), with the given scale and
+   * shape. Smaller shapes give heavier tails, and the mean is infinite for shapes up to 1.
+   */
+  static DelayDistribution pareto(double scale, double shape) {
+    if (!(scale > 0) || !(shape > 0)) {
+      throw new IllegalArgumentException("Need a positive scale and shape");
+    }
+    return new InverseCdfTable(u -> scale * (Math.pow(1 - u, -1 / shape) - 1));
+  }
+
+  /**
+   * An extra delay from a histogram, read from a CSV file with a header row and then the lower and
+   * upper bounds of a bin, as multiples of the best-case latency, and its weight on each line.
+   * Delays are uniform within each bin.
+   */
+  static DelayDistribution empirical(Path histogram) throws IOException {
+    List<String> lines = Files.readAllLines(histogram, StandardCharsets.UTF_8);
+    List<double[]> bins = new ArrayList<>();
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      double lower = Double.parseDouble(fields[0].trim());
+      double upper = Double.parseDouble(fields[1].trim());
+      double weight = Double.parseDouble(fields[2].trim());
+      if (!(lower >= 0 && upper >= lower && weight >= 0)) {
+        throw new IllegalArgumentException("Invalid histogram bin: " + line);
+      }
+      bins.add(new double[] {lower, upper, weight});
+    }
+    return new AliasTable(bins);
+  }
+
+  /**
+   * A continuous distribution, sampled by linear interpolation in a table of its quantile function
+   * at evenly spaced probabilities. The last interval holds the tail, so it has a finer table of
+   * its own, and only the last interval of that, with probability 1/SIZE^2, evaluates the quantile
+   * function itself.
+   */
+  private static class InverseCdfTable extends DelayDistribution {
+    private static final int SIZE = 1024;
+
+    private final DoubleUnaryOperator quantileFunction;
+    private final double[] quantiles = new double[SIZE];
+    private final double[] tailQuantiles = new double[SIZE];
+
+    InverseCdfTable(DoubleUnaryOperator quantileFunction) {
+      this.quantileFunction = quantileFunction;
+      for (int i = 0; i < SIZE; ++i) {
+        quantiles[i] = quantileFunction.applyAsDouble((double) i / SIZE);
+        tailQuantiles[i] = quantileFunction.applyAsDouble((SIZE - 1 + (double) i / SIZE) / SIZE);
+      }
+    }
+
+    @Override double sampleAt(double u) {
+      double x = u * SIZE;
+      int i = (int) x;
+      if (i < SIZE - 1) {
+        return interpolate(quantiles, i, x - i);
+      }
+      double tailX = (x - (SIZE - 1)) * SIZE;
+      int j = (int) tailX;
+      if (j < SIZE - 1) {
+        return interpolate(tailQuantiles, j, tailX - j);
+      }
+      return quantileFunction.applyAsDouble(u);
+    }
+
+    private static double interpolate(double[] table, int i, double fraction) {
+      return table[i] + fraction * (table[i + 1] - table[i]);
+    }
+  }
+
+  /**
+   * A histogram, sampled with Walker's alias method: one uniform number picks a column, then
+   * whether to take the column's own bin or its alias, then where within that bin.
+   */
+  private static class AliasTable extends DelayDistribution {
+    private final double[] lowers, widths;
+    /** The probability of taking each column's own bin, rather than its alias. */
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    AliasTable(List<double[]> bins) {
+      int n = bins.size();
+      if (n == 0) {
+        throw new IllegalArgumentException("Empty histogram");
+      }
+      lowers = new double[n];
+      widths = new double[n];
+      probabilities = new double[n];
+      aliases = new int[n];
+      double total = 0;
+      for (double[] bin : bins) {
+        total += bin[2];
+      }
+      if (!(total > 0)) {
+        throw new IllegalArgumentException("Histogram has no weight");
+      }
+
+      // Vose's algorithm: pair each column with less than average weight with one with more.
+      double[] scaled = new double[n];
+      int[] small = new int[n], large = new int[n];
+      int smallCount = 0, largeCount = 0;
+      for (int i = 0; i < n; ++i) {
+        double[] bin = bins.get(i);
+        lowers[i] = bin[0];
+        widths[i] = bin[1] - bin[0];
+        scaled[i] = bin[2] * n / total;
+        if (scaled[i] < 1) {
+          small[smallCount++] = i;
+        } else {
+          large[largeCount++] = i;
+        }
+      }
+      while (smallCount > 0 && largeCount > 0) {
+        int less = small[--smallCount], more = large[--largeCount];
+        probabilities[less] = scaled[less];
+        aliases[less] = more;
+        scaled[more] -= 1 - scaled[less];
+        if (scaled[more] < 1) {
+          small[smallCount++] = more;
+        } else {
+          large[largeCount++] = more;
+        }
+      }
+      // Whatever remains has weight 1, up to rounding.
+      while (largeCount > 0) {
+        probabilities[large[--largeCount]] = 1;
+      }
+      while (smallCount > 0) {
+        probabilities[small[--smallCount]] = 1;
+      }
+    }
+
+    @Override double sampleAt(double u) {
+      double x = u * probabilities.length;
+      int column = Math.min((int) x, probabilities.length - 1);
+      double fraction = x - column;
+      double probability = probabilities[column];
+      if (fraction < probability) {
+        return lowers[column] + widths[column] * (fraction / probability);
+      }
+      int bin = aliases[column];
+      return lowers[bin] + widths[bin] * ((fraction - probability) / (1 - probability));
+    }
+  }
+
+  /**
+   * The standard normal distribution's quantile function, by Acklam's rational approximation,
+   * whose relative error is below 1.2e-9. It's only used to build tables.
+   */
+  private static double inverseNormalCdf(double p) {
+    final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+        1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+    final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+        6.680131188771972e+01, -1.328068155288572e+01};
+    final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+        -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+    final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+        3.754408661907416e+00};
+    double low = 0.02425;
+    if (p <= 0) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    if (p < low) {
+      double q = Math.sqrt(-2 * Math.log(p));
+      return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+          / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+    }
+    if (p <= 1 - low) {
+      double q = p - 0.5, r = q * q;
+      return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+          / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+    return -inverseNormalCdf(1 - p);
+  }
+}
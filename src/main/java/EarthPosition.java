@@ -1,4 +1,3 @@
-import java.util.Random;
 
 /**
  * A position on the earth.
@@ -10,7 +9,7 @@ class EarthPosition {
   /** A normalized vector representing the direction of this position from the Earth's center. */
   private final Vector3d direction;
 
-  static EarthPosition randomPosition(Random r) {
+  static EarthPosition randomPosition(RandomStream r) {
     // Generate random points in the bounding box of the unit sphere, but skip points which lie
     // outside the unit sphere. This gives us random points uniformly distributed inside the unit
     // sphere, which we then normalize to get random points uniformly distributed on the surface.
@@ -25,10 +24,27 @@ class EarthPosition {
     }
   }
 
+  /** The position at the given latitude and longitude, in degrees. */
+  static EarthPosition fromDegrees(double latitude, double longitude) {
+    double phi = Math.toRadians(latitude), lambda = Math.toRadians(longitude);
+    return new EarthPosition(new Vector3d(
+        Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)));
+  }
+
   private EarthPosition(Vector3d direction) {
     this.direction = direction;
   }
 
+  /** A distinct position at the same place as {@code that}. */
+  EarthPosition(EarthPosition that) {
+    this.direction = that.direction;
+  }
+
+  /** The longitude of this position, in radians from -pi to pi. */
+  double getLongitude() {
+    return Math.atan2(direction.getY(), direction.getX());
+  }
+
   /** The great-circle distance to another earth position, in meters. */
   double getDistance(EarthPosition that) {
     double product = this.direction.dotProduct(that.direction);
@@ -45,7 +61,15 @@ class EarthPosition {
     return EARTH_RADIUS * centralAngle;
   }
 
-  private static double nextDouble(Random r, double min, double max) {
+  /**
+   * The best-case one-way latency to another position, in seconds, i.e. the time taken to travel
+   * the great-circle distance through fiber.
+   */
+  double getLatency(EarthPosition that) {
+    return getDistance(that) / Network.SPEED_OF_FIBER;
+  }
+
+  private static double nextDouble(RandomStream r, double min, double max) {
     return min + r.nextDouble() * (max - min);
   }
 }
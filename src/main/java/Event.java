@@ -5,6 +5,15 @@ abstract class Event implements Comparable<Event> {
   /** The subject of the event. */
   private final Node subject;
 
+  /** The time of the event as an integer key, which determines the order of events. */
+  private long timeKey;
+
+  /** The order in which the event was scheduled, used to break ties between simultaneous events. */
+  private long sequence;
+
+  /** The position of this event within its queue, if the queue tracks it, otherwise -1. */
+  private int queueIndex = -1;
+
   Event(double time, Node subject) {
     this.time = time;
     this.subject = subject;
@@ -18,16 +27,36 @@ abstract class Event implements Comparable<Event> {
     return subject;
   }
 
+  long getTimeKey() {
+    return timeKey;
+  }
+
+  long getSequence() {
+    return sequence;
+  }
+
+  int getQueueIndex() {
+    return queueIndex;
+  }
+
+  void setQueueIndex(int queueIndex) {
+    this.queueIndex = queueIndex;
+  }
+
+  /** Called by {@link Simulation} when the event is scheduled. */
+  void setOrder(long timeKey, long sequence) {
+    this.timeKey = timeKey;
+    this.sequence = sequence;
+  }
+
   @Override public int compareTo(Event that) {
-    double delta = this.time - that.time;
-    if (delta == 0 && !this.equals(that)) {
-      // We shouldn't return 0, since the messages aren't equal. identityHashCode gives us an
-      // arbitrary but consistent ordering, although this isn't 100% safe since it assumes no
-      // collisions (which are rare).
-      return System.identityHashCode(this) - System.identityHashCode(that);
-    } else {
-      return (int) Math.signum(delta);
+    int timeComparison = Long.compare(this.timeKey, that.timeKey);
+    if (timeComparison != 0) {
+      return timeComparison;
     }
+    // Simultaneous events are processed in the order they were scheduled. Unlike an arbitrary
+    // ordering, this is reproducible, which matters since the order affects random draws.
+    return Long.compare(this.sequence, that.sequence);
   }
 }
 
@@ -49,3 +78,55 @@ class MessageEvent extends Event {
     return message;
   }
 }
+
+/**
+ * A broadcast whose deliveries are released one at a time, in order of arrival. This keeps a single
+ * event in the queue per broadcast rather than one per destination. Its time and subject are those
+ * of the next pending delivery.
+ */
+class BroadcastEvent extends Event {
+  private final Node source;
+  private final Message message;
+  private final Node[] destinations;
+  private final double[] arrivalTimes;
+  private int next = 0;
+
+  /**
+   * @param destinations the destinations, sorted by arrival time
+   * @param arrivalTimes the arrival time at each destination, in ascending order
+   */
+  BroadcastEvent(Node source, Message message, Node[] destinations, double[] arrivalTimes) {
+    super(arrivalTimes[0], destinations[0]);
+    this.source = source;
+    this.message = message;
+    this.destinations = destinations;
+    this.arrivalTimes = arrivalTimes;
+  }
+
+  @Override double getTime() {
+    return arrivalTimes[next];
+  }
+
+  @Override Node getSubject() {
+    return destinations[next];
+  }
+
+  Node getSource() {
+    return source;
+  }
+
+  /** Remove the next pending delivery, returning it as a standalone message event. */
+  MessageEvent pollDelivery() {
+    MessageEvent delivery = new MessageEvent(arrivalTimes[next], destinations[next], message);
+    ++next;
+    return delivery;
+  }
+
+  boolean hasPendingDeliveries() {
+    return next < destinations.length;
+  }
+
+  int getPendingDeliveryCount() {
+    return destinations.length - next;
+  }
+}
@@ -0,0 +1,26 @@
+/**
+ * A priority queue of events. Events are ordered by their time keys, and simultaneous events are
+ * ordered by their sequence numbers, so the order is total and deterministic.
+ */
+interface EventQueue {
+  void add(Event event);
+
+  /** Return the earliest event without removing it, or null if the queue is empty. */
+  Event peek();
+
+  /** Remove and return the earliest event, or null if the queue is empty. */
+  Event poll();
+
+  /**
+   * Remove a specific event from the queue.
+   *
+   * @return whether the event was in the queue
+   */
+  boolean remove(Event event);
+
+  int size();
+
+  default boolean isEmpty() {
+    return size() == 0;
+  }
+}
@@ -0,0 +1,34 @@
+import java.util.function.Supplier;
+
+/** An implementation of {@link EventQueue}, with the time resolution which suits it. */
+enum EventQueueType {
+  /** A {@link HeapEventQueue}, which orders events by their exact times. */
+  HEAP(HeapEventQueue::new, TimeResolution.EXACT),
+
+  /**
+   * A {@link CalendarEventQueue}, whose buckets need keys which are linear in time, so events
+   * within a nanosecond of one another are treated as simultaneous.
+   */
+  CALENDAR(CalendarEventQueue::new, TimeResolution.NANOSECONDS);
+
+  private final Supplier<EventQueue> factory;
+  private final TimeResolution timeResolution;
+
+  EventQueueType(Supplier<EventQueue> factory, TimeResolution timeResolution) {
+    this.factory = factory;
+    this.timeResolution = timeResolution;
+  }
+
+  /** Create an empty queue of this type. */
+  EventQueue create() {
+    return factory.get();
+  }
+
+  TimeResolution getTimeResolution() {
+    return timeResolution;
+  }
+
+  static EventQueueType parse(String name) {
+    return valueOf(name.toUpperCase());
+  }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * An event queue backed by an implicit d-ary heap. Keys and sequence numbers are kept in primitive
+ * arrays alongside the events, so sifting compares contiguous longs rather than chasing pointers,
+ * and a wide heap keeps the tree shallow. Each event records its index in the heap, so it can be
+ * removed in logarithmic time.
+ */
+class HeapEventQueue implements EventQueue {
+  private static final int DEFAULT_ARITY = 4;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int arity;
+  private Event[] events = new Event[INITIAL_CAPACITY];
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private long[] sequences = new long[INITIAL_CAPACITY];
+  private int size = 0;
+
+  HeapEventQueue() {
+    this(DEFAULT_ARITY);
+  }
+
+  HeapEventQueue(int arity) {
+    if (arity < 2) {
+      throw new IllegalArgumentException("Arity must be at least 2");
+    }
+    this.arity = arity;
+  }
+
+  @Override public void add(Event event) {
+    if (size == events.length) {
+      grow();
+    }
+    siftUp(size++, event);
+  }
+
+  @Override public Event peek() {
+    return size == 0 ? null : events[0];
+  }
+
+  @Override public Event poll() {
+    if (size == 0) {
+      return null;
+    }
+    Event first = events[0];
+    first.setQueueIndex(-1);
+    Event last = events[--size];
+    events[size] = null;
+    if (size > 0) {
+      siftDown(0, last);
+    }
+    return first;
+  }
+
+  @Override public boolean remove(Event event) {
+    int index = event.getQueueIndex();
+    if (index < 0 || index >= size || events[index] != event) {
+      return false;
+    }
+    event.setQueueIndex(-1);
+    Event last = events[--size];
+    events[size] = null;
+    if (index < size) {
+      // Fill the hole with the last event, which may need to move in either direction.
+      siftDown(index, last);
+      if (events[index] == last) {
+        siftUp(index, last);
+      }
+    }
+    return true;
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  /** Move {@code event} up from the hole at {@code index} until the heap property holds. */
+  private void siftUp(int index, Event event) {
+    long key = event.getTimeKey(), sequence = event.getSequence();
+    while (index > 0) {
+      int parent = (index - 1) / arity;
+      if (!precedes(key, sequence, keys[parent], sequences[parent])) {
+        break;
+      }
+      set(index, events[parent], keys[parent], sequences[parent]);
+      index = parent;
+    }
+    set(index, event, key, sequence);
+  }
+
+  /** Move {@code event} down from the hole at {@code index} until the heap property holds. */
+  private void siftDown(int index, Event event) {
+    long key = event.getTimeKey(), sequence = event.getSequence();
+    while (true) {
+      int firstChild = index * arity + 1;
+      if (firstChild >= size) {
+        break;
+      }
+      int lastChild = Math.min(firstChild + arity, size);
+      int minChild = firstChild;
+      for (int child = firstChild + 1; child < lastChild; ++child) {
+        if (precedes(keys[child], sequences[child], keys[minChild], sequences[minChild])) {
+          minChild = child;
+        }
+      }
+      if (!precedes(keys[minChild], sequences[minChild], key, sequence)) {
+        break;
+      }
+      set(index, events[minChild], keys[minChild], sequences[minChild]);
+      index = minChild;
+    }
+    set(index, event, key, sequence);
+  }
+
+  private void set(int index, Event event, long key, long sequence) {
+    event.setQueueIndex(index);
+    events[index] = event;
+    keys[index] = key;
+    sequences[index] = sequence;
+  }
+
+  private void grow() {
+    int capacity = events.length * 2;
+    events = Arrays.copyOf(events, capacity);
+    keys = Arrays.copyOf(keys, capacity);
+    sequences = Arrays.copyOf(sequences, capacity);
+  }
+
+  private static boolean precedes(long key1, long sequence1, long key2, long sequence2) {
+    return key1 < key2 || key1 == key2 && sequence1 < sequence2;
+  }
+}
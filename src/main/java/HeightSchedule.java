@@ -0,0 +1,70 @@
+/**
+ * How many consecutive heights (blocks) each correct node decides before it terminates: either a
+ * fixed number of blocks, or as many as it can within a duration. By default a node decides a
+ * single height, which measures the latency of one decision. Deciding many heights measures
+ * sustained throughput instead.
+ */
+class HeightSchedule {
+  /** Decide a single height, as every protocol originally did. */
+  static final HeightSchedule SINGLE = new HeightSchedule(1, Double.POSITIVE_INFINITY, false);
+
+  private final int blocks;
+  private final double duration;
+  private final boolean pipelined;
+
+  private HeightSchedule(int blocks, double duration, boolean pipelined) {
+    this.blocks = blocks;
+    this.duration = duration;
+    this.pipelined = pipelined;
+  }
+
+  /**
+   * Decide {@code blocks} consecutive heights.
+   *
+   * @param pipelined whether the leader of each height may propose as soon as it has voted to
+   *     commit the previous height, rather than waiting until it's decided
+   */
+  static HeightSchedule blocks(int blocks, boolean pipelined) {
+    if (blocks < 1) {
+      throw new IllegalArgumentException("Need at least one block");
+    }
+    return new HeightSchedule(blocks, Double.POSITIVE_INFINITY, pipelined);
+  }
+
+  /**
+   * Decide consecutive heights until the first decision at or after {@code duration} seconds.
+   *
+   * @param pipelined as in {@link #blocks}
+   */
+  static HeightSchedule duration(double duration, boolean pipelined) {
+    if (!(duration > 0)) {
+      throw new IllegalArgumentException("Need a positive duration");
+    }
+    return new HeightSchedule(Integer.MAX_VALUE, duration, pipelined);
+  }
+
+  /** Whether more than one height may be decided. */
+  boolean isMultiHeight() {
+    return blocks > 1;
+  }
+
+  boolean isPipelined() {
+    return pipelined;
+  }
+
+  /**
+   * Whether a node is done, having decided {@code decidedHeights} heights, the last of them at
+   * {@code time}.
+   */
+  boolean isDone(int decidedHeights, double time) {
+    return decidedHeights >= blocks || time >= duration;
+  }
+
+  /** A time limit for a run under this schedule, given one for deciding a single height. */
+  double scaleTimeLimit(double singleHeightTimeLimit) {
+    if (duration < Double.POSITIVE_INFINITY) {
+      return duration + singleHeightTimeLimit;
+    }
+    return blocks * singleHeightTimeLimit;
+  }
+}
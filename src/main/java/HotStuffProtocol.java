@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Basic HotStuff, run by {@link CorrectHotStuffNode}. */
+public class HotStuffProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "hotstuff";
+  }
+
+  @Override public String getDisplayName() {
+    return "HotStuff";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectHotStuffNode(position, initialTimeout, false);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("views_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("views_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectHotStuffNode) node).getViewCount()));
+  }
+}
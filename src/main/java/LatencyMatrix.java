@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The best-case one-way latency, in seconds, between each pair of nodes, stored in a flat array
+ * indexed by node IDs. Positions never change during a run, so this is computed once rather than
+ * on every delivery.
+ */
+class LatencyMatrix {
+  private final int size;
+  private final double[] latencies;
+
+  private LatencyMatrix(int size, double[] latencies) {
+    this.size = size;
+    this.latencies = latencies;
+  }
+
+  /** Compute the matrix for the given positions, where the i-th position is that of node i. */
+  static LatencyMatrix compute(List<EarthPosition> positions) {
+    int size = positions.size();
+    double[] latencies = new double[size * size];
+    for (int i = 0; i < size; ++i) {
+      // Start from the diagonal, since rounding can make a node's distance to itself nonzero, and
+      // we want exactly the latencies that EarthPosition would give.
+      for (int j = i; j < size; ++j) {
+        double latency = positions.get(i).getLatency(positions.get(j));
+        latencies[i * size + j] = latency;
+        latencies[j * size + i] = latency;
+      }
+    }
+    return new LatencyMatrix(size, latencies);
+  }
+
+  double get(int source, int destination) {
+    return latencies[source * size + destination];
+  }
+
+  /**
+   * A thread-safe cache of matrices, keyed by the list of node positions. Positions are compared by
+   * identity, so a hit requires the same position objects in the same order, as when a topology is
+   * reused across samples.
+   *
+   * <p>Matrices are kept until their total size reaches a budget, after which others are computed
+   * for each use and dropped. Paired scenarios are replayed in the same order for every timeout,
+   * which an LRU cache smaller than the sweep would miss every time, whereas this way the matrices
+   * which are kept always hit. Matrices are the same either way, so results don't depend on the
+   * budget.
+   */
+  static class Cache {
+    private final Map<List<EarthPosition>, LatencyMatrix> matrices = new ConcurrentHashMap<>();
+    private final long maxBytes;
+    /** The total size of the matrices kept, including any being added. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /** @param maxBytes the greatest total size of the matrices to keep, in bytes */
+    Cache(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    LatencyMatrix get(List<Node> nodes) {
+      List<EarthPosition> positions = new ArrayList<>(nodes.size());
+      for (Node node : nodes) {
+        positions.add(node.getPosition());
+      }
+      LatencyMatrix matrix = matrices.get(positions);
+      if (matrix != null) {
+        return matrix;
+      }
+      matrix = compute(positions);
+      long size = (long) Double.BYTES * matrix.latencies.length;
+      if (bytes.addAndGet(size) > maxBytes) {
+        bytes.addAndGet(-size);
+        return matrix;
+      }
+      LatencyMatrix existing = matrices.putIfAbsent(positions, matrix);
+      if (existing != null) {
+        // Another thread computed the same matrix first.
+        bytes.addAndGet(-size);
+        return existing;
+      }
+      return matrix;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * A histogram with logarithmically sized buckets, in the style of HdrHistogram. Values are
+ * quantized to a fixed unit, and each power-of-two range of quantized values is split into
+ * equally many linear sub-buckets, which bounds the relative error of any reported percentile.
+ * Memory is fixed, regardless of how many values are recorded.
+ */
+class LogHistogram {
+  /** The number of bits of precision kept for each value, so the relative error is below 2^-7. */
+  private static final int SUB_BUCKET_BITS = 8;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+  /** The smallest distinguishable difference between values, e.g. 1e-6 for microseconds. */
+  private final double unit;
+  private final long[] counts;
+  private long totalCount = 0;
+  private double sum = 0;
+  private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+  LogHistogram(double unit) {
+    this.unit = unit;
+    this.counts = new long[bucketIndex(Long.MAX_VALUE) + 1];
+  }
+
+  /** Record a non-negative value. */
+  void record(double value) {
+    if (!(value >= 0)) {
+      throw new IllegalArgumentException("Can't record " + value);
+    }
+    ++counts[bucketIndex(quantize(value))];
+    ++totalCount;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Add all values recorded by another histogram with the same unit. */
+  void add(LogHistogram that) {
+    if (this.unit != that.unit) {
+      throw new IllegalArgumentException("Units differ");
+    }
+    for (int i = 0; i < counts.length; ++i) {
+      counts[i] += that.counts[i];
+    }
+    totalCount += that.totalCount;
+    sum += that.sum;
+    min = Math.min(min, that.min);
+    max = Math.max(max, that.max);
+  }
+
+  void clear() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    sum = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+  }
+
+  long getCount() {
+    return totalCount;
+  }
+
+  /** The exact mean of all recorded values. */
+  double getMean() {
+    return sum / totalCount;
+  }
+
+  /** The exact minimum of all recorded values. */
+  double getMin() {
+    return min;
+  }
+
+  /** The exact maximum of all recorded values. */
+  double getMax() {
+    return max;
+  }
+
+  /**
+   * The smallest value such that at least {@code percentile} percent of recorded values are no
+   * greater, up to the precision of the buckets. Like HdrHistogram, this reports the highest value
+   * in the matching bucket, capped by the exact maximum.
+   */
+  double getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return Double.NaN;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < counts.length; ++i) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(highestValueInBucket(i) * unit, max);
+      }
+    }
+    return max;
+  }
+
+  private long quantize(double value) {
+    double quantized = Math.rint(value / unit);
+    return quantized >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) quantized;
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // Drop enough low bits to leave SUB_BUCKET_BITS significant bits.
+    int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+    return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + subBucket;
+  }
+
+  private static long highestValueInBucket(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -1,179 +1,600 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Main {
   private static final int RANDOM_SEED = 12345;
   private static final double TIME_LIMIT = 4;
+  /** The default numbers of nodes in each scenario. */
+  private static final int CORRECT_NODES = 90, FAILED_NODES = 10;
+  /** The maximum number of runs for each protocol and timeout, by default. */
   private static final int SAMPLES = 1000;
+  /** The resolution of termination time histograms, in seconds. */
+  private static final double HISTOGRAM_UNIT = 1e-6;
+  private static final int BOOTSTRAP_REPLICATES = 10000;
+  /** The protocol whose speedup is reported, by default. */
+  private static final String DEFAULT_SUBJECT = "mir";
+  /**
+   * The relative speedup of the subject protocol over the best of the others, given the mean
+   * latency of the subject first and then of each other protocol.
+   */
+  private static final ToDoubleFunction<double[]> SPEEDUP = means -> {
+    double secondBest = Arrays.stream(means, 1, means.length).min().getAsDouble();
+    return (secondBest - means[0]) / secondBest;
+  };
+  private static final List<String> RESULT_COLUMNS = Arrays.asList(
+      "protocol", "initial_timeout", "runs", "incomplete_runs", "abandoned",
+      "estimate", "estimate_half_width", "nodes", "mean", "p50", "p90", "p99", "max",
+      "messages", "bytes", "blocks_per_second", "inter_commit_p50", "inter_commit_p99",
+      "max_height_skew",
+      "tx_per_second", "tx_latency_p50", "tx_latency_p99");
+  /** The number of simulations to run in parallel. Results don't depend on it. */
+  private static final int THREADS =
+      Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = parseOptions(args);
+    List<ConsensusProtocol> protocols = selectProtocols(options);
+    int correctNodes =
+        Integer.parseInt(options.getOrDefault("correct-nodes", String.valueOf(CORRECT_NODES)));
+    int failedNodes =
+        Integer.parseInt(options.getOrDefault("failed-nodes", String.valueOf(FAILED_NODES)));
+    HeightSchedule heightSchedule = parseHeightSchedule(options);
+    Workload.Spec workloadSpec = parseWorkloadSpec(options);
+    NetworkModel networkModel = parseNetworkModel(options);
+    RegionTopology regions = parseRegionTopology(options);
+    EventQueueType eventQueueType =
+        EventQueueType.parse(options.getOrDefault("event-queue", "heap"));
+    int partitions = Integer.parseInt(options.getOrDefault("partitions", "1"));
+    long latencyCacheBytes =
+        (long) (1e6 * Double.parseDouble(options.getOrDefault("latency-cache-mb", "1000")));
+    if (Boolean.parseBoolean(options.getOrDefault("optimize", "false"))) {
+      optimizeTimeouts(options, protocols, correctNodes, failedNodes, regions,
+          new ScenarioRunner(TIME_LIMIT, new LatencyMatrix.Cache(latencyCacheBytes),
+              heightSchedule, workloadSpec, networkModel, eventQueueType, partitions));
+      return;
+    }
+
+    // Protocol-specific metrics are written after the common columns, and left empty for the
+    // protocols which don't record them.
+    List<String> metricNames = new ArrayList<>(protocols.stream()
+        .flatMap(protocol -> protocol.getMetricNames().stream())
+        .collect(Collectors.toCollection(LinkedHashSet::new)));
+    List<String> columns = new ArrayList<>(RESULT_COLUMNS);
+    columns.addAll(metricNames);
+    String outputPath = options.get("output");
+    ResultsWriter resultsWriter = outputPath == null ? null
+        : ResultsWriter.open(Paths.get(outputPath), columns);
+    AdaptiveSampler sampler = new AdaptiveSampler(
+        AdaptiveSampler.RunStatistic.parse(options.getOrDefault("statistic", "mean")),
+        Double.parseDouble(options.getOrDefault("ci-width", "0.02")),
+        Integer.parseInt(options.getOrDefault("min-runs", "100")),
+        Integer.parseInt(options.getOrDefault("max-runs", String.valueOf(SAMPLES))),
+        Double.parseDouble(options.getOrDefault("max-incomplete", "0.5")));
+
+    // In paired mode, run i of every protocol and timeout replays the same scenario, so that
+    // protocols can be compared scenario by scenario with common random numbers.
+    boolean paired = Boolean.parseBoolean(options.getOrDefault("paired", "false"));
+    Scenario[] pairedScenarios = paired
+        ? generatePairedScenarios(sampler.getMaxRuns(), correctNodes, failedNodes, regions)
+        : null;
+    ScenarioRunner runner = new ScenarioRunner(TIME_LIMIT,
+        paired ? new LatencyMatrix.Cache(latencyCacheBytes) : null, heightSchedule, workloadSpec,
+        networkModel, eventQueueType, partitions);
+    // When many heights are decided, each run is summarized by the time between decisions, rather
+    // than the time until the last decision.
+    boolean multiHeight = heightSchedule.isMultiHeight();
+    Function<ScenarioRunner.Result, double[]> runTimes = multiHeight
+        ? result -> result.getThroughput().getInterCommitLatencies()
+        : ScenarioRunner.Result::getTerminationTimes;
 
-  public static void main(String[] args) {
     // Print the first row which contains column names.
-    System.out.println("initial_timeout, tendermint, algorand, this_work");
+    System.out.println("initial_timeout, " + protocols.stream()
+        .map(ConsensusProtocol::getName)
+        .collect(Collectors.joining(", ")));
 
-    double tendermintBestLatency = Double.MAX_VALUE, tendermintBestTimeout = 0;
-    double algorandBestLatency = Double.MAX_VALUE, algorandBestTimeout = 0;
-    double mirBestLatency = Double.MAX_VALUE, mirBestTimeout = 0;
+    Sweep sweep = new Sweep(THREADS);
+    double[] bestLatencies = new double[protocols.size()];
+    double[] bestTimeouts = new double[protocols.size()];
+    // The statistic of each run at each protocol's best timeout, indexed by run, for the
+    // bootstrap.
+    double[][] bestValues = new double[protocols.size()][];
+    Arrays.fill(bestLatencies, Double.MAX_VALUE);
+    long totalRuns = 0;
 
-    for (double initalTimeout = 0.01; initalTimeout <= 0.4; initalTimeout += 0.01) {
-      DoubleSummaryStatistics tendermintOverallStats = new DoubleSummaryStatistics(),
-          algorandOverallStats = new DoubleSummaryStatistics(),
-          mirOverallStats = new DoubleSummaryStatistics();
-      for (int i = 0; i < SAMPLES; ++i) {
-        Optional<DoubleSummaryStatistics> tendermintStats =
-            runTendermint(initalTimeout, 90, 10);
-        Optional<DoubleSummaryStatistics> algorandStats =
-            runAlgorand(initalTimeout, 90, 10);
-        Optional<DoubleSummaryStatistics> mirStats =
-            runMir(initalTimeout, 90, 10);
-
-        tendermintStats.ifPresent(tendermintOverallStats::combine);
-        algorandStats.ifPresent(algorandOverallStats::combine);
-        mirStats.ifPresent(mirOverallStats::combine);
-      }
+    // Histograms of the termination times of correct nodes, which are reused for each timeout.
+    LogHistogram[] histograms = new LogHistogram[protocols.size()];
+    for (int p = 0; p < protocols.size(); ++p) {
+      histograms[p] = new LogHistogram(HISTOGRAM_UNIT);
+    }
+    LogHistogram[] interCommitHistograms = new LogHistogram[protocols.size()];
+    for (int p = 0; p < protocols.size(); ++p) {
+      interCommitHistograms[p] = new LogHistogram(HISTOGRAM_UNIT);
+    }
+    LogHistogram[] transactionHistograms = new LogHistogram[protocols.size()];
+    for (int p = 0; p < protocols.size(); ++p) {
+      transactionHistograms[p] = new LogHistogram(HISTOGRAM_UNIT);
+    }
+    // Totals over completed runs, which are also reused for each timeout.
+    long[] messageCounts = new long[protocols.size()];
+    long[] byteCounts = new long[protocols.size()];
+    double[] transactionThroughputSums = new double[protocols.size()];
+    double[] blocksPerSecondSums = new double[protocols.size()];
+    int[] maxHeightSkews = new int[protocols.size()];
+    double[][] metricSums = new double[protocols.size()][metricNames.size()];
+    int[][] metricCounts = new int[protocols.size()][metricNames.size()];
 
-      if (tendermintOverallStats.getCount() > 0 &&
-          tendermintOverallStats.getAverage() < tendermintBestLatency) {
-        tendermintBestLatency = tendermintOverallStats.getAverage();
-        tendermintBestTimeout = initalTimeout;
+    // The timeout index, rather than the timeout itself, is used to derive seeds, since the
+    // accumulated timeout isn't an exact decimal.
+    int timeoutIndex = 0;
+    for (double initalTimeout = 0.01; initalTimeout <= 0.4; initalTimeout += 0.01) {
+      for (int p = 0; p < protocols.size(); ++p) {
+        histograms[p].clear();
+        interCommitHistograms[p].clear();
+        transactionHistograms[p].clear();
       }
-      if (algorandOverallStats.getCount() > 0 &&
-          algorandOverallStats.getAverage() < algorandBestLatency) {
-        algorandBestLatency = algorandOverallStats.getAverage();
-        algorandBestTimeout = initalTimeout;
+      Arrays.fill(transactionThroughputSums, 0);
+      Arrays.fill(messageCounts, 0);
+      Arrays.fill(byteCounts, 0);
+      Arrays.fill(blocksPerSecondSums, 0);
+      Arrays.fill(maxHeightSkews, 0);
+      for (int p = 0; p < protocols.size(); ++p) {
+        Arrays.fill(metricSums[p], 0);
+        Arrays.fill(metricCounts[p], 0);
       }
-      if (mirOverallStats.getCount() > 0 &&
-          mirOverallStats.getAverage() < mirBestLatency) {
-        mirBestLatency = mirOverallStats.getAverage();
-        mirBestTimeout = initalTimeout;
+
+      double timeout = initalTimeout;
+      int t = timeoutIndex++;
+      AdaptiveSampler.Estimate[] estimates = sampler.run(sweep, protocols.size(),
+          (p, i) -> {
+            ConsensusProtocol protocol = protocols.get(p);
+            Scenario scenario;
+            if (paired) {
+              scenario = pairedScenarios[i];
+            } else {
+              // Seeds are keyed by name, so they don't depend on which protocols are selected.
+              long seed = Util.deriveSeed(RANDOM_SEED, protocol.getName().hashCode(), t, i);
+              scenario = Scenario.generate(seed, correctNodes, failedNodes, regions);
+            }
+            return runner.run(protocol, scenario, timeout);
+          },
+          runTimes,
+          (result, p) -> {
+            for (double terminationTime : result.getTerminationTimes()) {
+              histograms[p].record(terminationTime);
+            }
+            messageCounts[p] += result.getSentMessageCount();
+            byteCounts[p] += result.getSentByteCount();
+            Throughput throughput = result.getThroughput();
+            for (double latency : throughput.getInterCommitLatencies()) {
+              interCommitHistograms[p].record(latency);
+            }
+            blocksPerSecondSums[p] += throughput.getBlocksPerSecond();
+            maxHeightSkews[p] = Math.max(maxHeightSkews[p], throughput.getMaxHeightSkew());
+            for (double latency : result.getTransactionLatencies()) {
+              transactionHistograms[p].record(latency);
+            }
+            transactionThroughputSums[p] += result.getTransactionThroughput();
+            for (int m = 0; m < metricNames.size(); ++m) {
+              Double metric = result.getMetrics().get(metricNames.get(m));
+              if (metric != null) {
+                metricSums[p][m] += metric;
+                ++metricCounts[p][m];
+              }
+            }
+          });
+
+      StringBuilder row = new StringBuilder(String.format("%.2f", initalTimeout));
+      for (int p = 0; p < protocols.size(); ++p) {
+        AdaptiveSampler.Estimate estimate = estimates[p];
+        LogHistogram histogram = histograms[p];
+        LogHistogram interCommitHistogram = interCommitHistograms[p];
+        LogHistogram transactionHistogram = transactionHistograms[p];
+        boolean empty = estimate.isAbandoned() || estimate.getCount() == 0;
+        totalRuns += estimate.getRunCount();
+
+        if (resultsWriter != null) {
+          List<Object> values = new ArrayList<>(Arrays.asList(protocols.get(p).getName(), timeout,
+              estimate.getRunCount(), estimate.getIncompleteCount(), estimate.isAbandoned(),
+              estimate.getMean(), estimate.getHalfWidth(),
+              histogram.getCount(),
+              histogram.getCount() == 0 ? null : histogram.getMean(),
+              histogram.getValueAtPercentile(50),
+              histogram.getValueAtPercentile(90),
+              histogram.getValueAtPercentile(99),
+              histogram.getCount() == 0 ? null : histogram.getMax(),
+              estimate.getCount() == 0 ? null : (double) messageCounts[p] / estimate.getCount(),
+              estimate.getCount() == 0 ? null : (double) byteCounts[p] / estimate.getCount(),
+              !multiHeight || estimate.getCount() == 0
+                  ? null : blocksPerSecondSums[p] / estimate.getCount(),
+              multiHeight ? interCommitHistogram.getValueAtPercentile(50) : null,
+              multiHeight ? interCommitHistogram.getValueAtPercentile(99) : null,
+              multiHeight ? maxHeightSkews[p] : null,
+              workloadSpec == null || estimate.getCount() == 0
+                  ? null : transactionThroughputSums[p] / estimate.getCount(),
+              workloadSpec == null ? null : transactionHistogram.getValueAtPercentile(50),
+              workloadSpec == null ? null : transactionHistogram.getValueAtPercentile(99)));
+          for (int m = 0; m < metricNames.size(); ++m) {
+            values.add(metricCounts[p][m] == 0 ? null : metricSums[p][m] / metricCounts[p][m]);
+          }
+          resultsWriter.writeRow(values.toArray());
+        }
+
+        if (!empty && estimate.getMean() < bestLatencies[p]) {
+          bestLatencies[p] = estimate.getMean();
+          bestTimeouts[p] = initalTimeout;
+          bestValues[p] = estimate.getRunValues();
+        }
+        row.append(", ").append(empty ? "" : String.valueOf(estimate.getMean()));
       }
+      System.out.println(row);
+    }
 
-      System.out.printf("%.2f, %s, %s, %s\n",
-          initalTimeout,
-          tendermintOverallStats.getCount() > 0 ? tendermintOverallStats.getAverage() : "",
-          algorandOverallStats.getCount() > 0 ? algorandOverallStats.getAverage() : "",
-          mirOverallStats.getCount() > 0 ? mirOverallStats.getAverage() : "");
+    if (resultsWriter != null) {
+      resultsWriter.close();
     }
 
     System.out.println();
-    System.out.printf("Tendermint best with timeout %.2f: %.4f\n",
-        tendermintBestTimeout, tendermintBestLatency);
-    System.out.printf("Algorand best with timeout %.2f: %.4f\n",
-        algorandBestTimeout, algorandBestLatency);
-    System.out.printf("Mir best with timeout %.2f: %.4f\n",
-        mirBestTimeout, mirBestLatency);
-    double secondBestLatency = Math.min(tendermintBestLatency, algorandBestLatency);
-    System.out.printf("Mir speedup: %.4f\n",
-        (secondBestLatency - mirBestLatency) / secondBestLatency);
-  }
+    for (int p = 0; p < protocols.size(); ++p) {
+      System.out.printf("%s best with timeout %.2f: %.4f\n",
+          protocols.get(p).getDisplayName(), bestTimeouts[p], bestLatencies[p]);
+    }
 
-  private static Optional<DoubleSummaryStatistics> runTendermint(
-      double initialTimeout, int correctNodeCount, int failedNodeCount) {
-    Random random = new Random();
-    List<Node> nodes = new ArrayList<>();
-    for (int i = 0; i < correctNodeCount; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new CorrectTendermintNode(position, initialTimeout));
+    // Compare the subject protocol to the best of the others.
+    int subject = indexOfSubject(protocols, options);
+    if (subject >= 0) {
+      String subjectName = protocols.get(subject).getDisplayName();
+      int secondBest = -1;
+      for (int p = 0; p < protocols.size(); ++p) {
+        if (p != subject && (secondBest < 0 || bestLatencies[p] < bestLatencies[secondBest])) {
+          secondBest = p;
+        }
+      }
+      System.out.printf("%s speedup: %.4f\n", subjectName,
+          (bestLatencies[secondBest] - bestLatencies[subject]) / bestLatencies[secondBest]);
+
+      if (Arrays.stream(bestValues).allMatch(Objects::nonNull)) {
+        double[][] runValues = subjectFirst(bestValues, subject);
+        double[][] samples = paired
+            ? pairedValues(runValues)
+            : Arrays.stream(runValues).map(Main::completedValues).toArray(double[][]::new);
+        if (paired) {
+          // Compare the subject to the second best protocol scenario by scenario.
+          double[] secondBestValues = samples[secondBest < subject ? secondBest + 1 : secondBest];
+          DoubleSummaryStatistics differences = new DoubleSummaryStatistics();
+          double sumOfSquares = 0;
+          for (int i = 0; i < samples[0].length; ++i) {
+            double difference = secondBestValues[i] - samples[0][i];
+            differences.accept(difference);
+            sumOfSquares += difference * difference;
+          }
+          long n = differences.getCount();
+          double variance =
+              (sumOfSquares - n * Math.pow(differences.getAverage(), 2)) / (n - 1);
+          System.out.printf("%s saving per scenario: %.4f +/- %.4f over %d scenarios\n",
+              subjectName, differences.getAverage(),
+              AdaptiveSampler.Z_95 * Math.sqrt(variance / n), n);
+        }
+        // The interval holds each protocol's best timeout fixed, so it doesn't account for the
+        // optimism of choosing the best of many timeouts.
+        double sampleSpeedup = SPEEDUP.applyAsDouble(Arrays.stream(samples)
+            .mapToDouble(v -> Arrays.stream(v).average().orElse(0))
+            .toArray());
+        double[] interval = Util.bootstrapInterval(samples, SPEEDUP,
+            paired, BOOTSTRAP_REPLICATES, 0.95, new Random(RANDOM_SEED));
+        System.out.printf("%s speedup over %s runs: %.4f, 95%% interval [%.4f, %.4f]\n",
+            subjectName, paired ? "paired" : "completed", sampleSpeedup,
+            interval[0], interval[1]);
+      }
     }
-    for (int i = 0; i < failedNodeCount; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new FailedNode(position));
+    System.out.printf("Total runs: %d\n", totalRuns);
+  }
+
+  /**
+   * Search for each protocol's best initial timeout, rather than sweeping a fixed grid, and compare
+   * the protocols at their best timeouts on the same scenarios.
+   */
+  private static void optimizeTimeouts(Map<String, String> options,
+      List<ConsensusProtocol> protocols, int correctNodes, int failedNodes, RegionTopology regions,
+      ScenarioRunner runner) {
+    AdaptiveSampler.RunStatistic statistic =
+        AdaptiveSampler.RunStatistic.parse(options.getOrDefault("statistic", "mean"));
+    int gridSize = Integer.parseInt(options.getOrDefault("grid", "16"));
+    int initialRuns = Integer.parseInt(options.getOrDefault("initial-runs", "25"));
+    int maxRuns = Integer.parseInt(options.getOrDefault("max-runs", "400"));
+    double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.002"));
+
+    Sweep sweep = new Sweep(THREADS);
+    Scenario[] scenarios = generatePairedScenarios(maxRuns, correctNodes, failedNodes, regions);
+    TimeoutOptimizer.Point[] bests = new TimeoutOptimizer.Point[protocols.size()];
+    long totalRuns = 0;
+
+    for (int p = 0; p < protocols.size(); ++p) {
+      ConsensusProtocol protocol = protocols.get(p);
+      // Runs which don't complete count as taking the whole time limit.
+      TimeoutOptimizer optimizer = new TimeoutOptimizer(sweep,
+          (timeout, i) -> runner.run(protocol, scenarios[i], timeout)
+              .map(ScenarioRunner.Result::getTerminationTimes),
+          statistic, runner.getTimeLimit());
+      TimeoutOptimizer.Result result =
+          optimizer.optimize(0.01, 0.4, gridSize, initialRuns, maxRuns, tolerance);
+      TimeoutOptimizer.Point best = result.getBest();
+      bests[p] = best;
+      totalRuns += result.getTotalRuns();
+
+      System.out.printf("%s best with timeout %.4f: %.4f +/- %.4f (%d runs)\n",
+          protocol.getDisplayName(), best.getTimeout(), best.getMean(), best.getHalfWidth(),
+          result.getTotalRuns());
+      System.out.println("initial_timeout, latency, half_width");
+      for (TimeoutOptimizer.Point point : result.getCurve()) {
+        System.out.printf("%.4f, %.4f, %.4f\n",
+            point.getTimeout(), point.getMean(), point.getHalfWidth());
+      }
+      System.out.println();
     }
-    Collections.shuffle(nodes, random);
 
-    Network network = new FullyConnectedNetwork(nodes, random);
-    Simulation simulation = new Simulation(network);
-    if (!simulation.run(TIME_LIMIT)) {
-      return Optional.empty();
+    int subject = indexOfSubject(protocols, options);
+    if (subject >= 0) {
+      double[][] samples = subjectFirst(Arrays.stream(bests)
+          .map(TimeoutOptimizer.Point::getValues)
+          .toArray(double[][]::new), subject);
+      double[] interval = Util.bootstrapInterval(samples, SPEEDUP,
+          true, BOOTSTRAP_REPLICATES, 0.95, new Random(RANDOM_SEED));
+      System.out.printf("%s speedup: %.4f, 95%% interval [%.4f, %.4f]\n",
+          protocols.get(subject).getDisplayName(),
+          SPEEDUP.applyAsDouble(subjectFirst(Arrays.stream(bests)
+              .mapToDouble(TimeoutOptimizer.Point::getMean)
+              .toArray(), subject)),
+          interval[0], interval[1]);
     }
+    System.out.printf("Total runs: %d\n", totalRuns);
+  }
 
-    List<Node> correctNodes = nodes.stream()
-        .filter(n -> n instanceof CorrectTendermintNode)
-        .collect(Collectors.toList());
-    if (!correctNodes.stream().allMatch(Node::hasTerminated)) {
-      System.out.println("WARNING: Not all Tendermint nodes terminated.");
-      return Optional.empty();
+  /**
+   * The heights each correct node decides: {@code --blocks} consecutive heights, or as many as it
+   * can within {@code --duration} seconds, optionally with {@code --pipelined=true}. By default,
+   * a single height.
+   */
+  private static HeightSchedule parseHeightSchedule(Map<String, String> options) {
+    boolean pipelined = Boolean.parseBoolean(options.getOrDefault("pipelined", "false"));
+    if (options.containsKey("blocks") && options.containsKey("duration")) {
+      throw new IllegalArgumentException("Expected --blocks or --duration, not both");
+    }
+    if (options.containsKey("blocks")) {
+      return HeightSchedule.blocks(Integer.parseInt(options.get("blocks")), pipelined);
     }
+    if (options.containsKey("duration")) {
+      return HeightSchedule.duration(Double.parseDouble(options.get("duration")), pipelined);
+    }
+    return HeightSchedule.SINGLE;
+  }
 
-    return Optional.of(correctNodes.stream()
-        .mapToDouble(Node::getTerminationTime)
-        .summaryStatistics());
+  /**
+   * The client transactions of each run, by {@code --workload}: {@code poisson} at {@code
+   * --tx-rate} transactions per second, {@code bursty} alternating between that rate and {@code
+   * --burst-rate} in bursts and gaps of mean length {@code --burst-length} and {@code --gap-length}
+   * seconds, or {@code trace} replaying the CSV file {@code --trace}. Blocks hold up to {@code
+   * --max-batch-bytes}. By default there's no workload, and blocks are empty.
+   */
+  private static Workload.Spec parseWorkloadSpec(Map<String, String> options) throws IOException {
+    String name = options.get("workload");
+    if (name == null) {
+      return null;
+    }
+    double rate = Double.parseDouble(options.getOrDefault("tx-rate", "1000"));
+    int size = Integer.parseInt(options.getOrDefault("tx-size", "250"));
+    ArrivalProcess arrivalProcess;
+    switch (name) {
+      case "poisson":
+        arrivalProcess = ArrivalProcess.poisson(rate, size);
+        break;
+      case "bursty":
+        arrivalProcess = ArrivalProcess.bursty(rate,
+            Double.parseDouble(options.getOrDefault("burst-rate", String.valueOf(10 * rate))),
+            Double.parseDouble(options.getOrDefault("burst-length", "0.1")),
+            Double.parseDouble(options.getOrDefault("gap-length", "1")),
+            size);
+        break;
+      case "trace":
+        arrivalProcess = ArrivalProcess.trace(Paths.get(options.get("trace")));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown workload: " + name);
+    }
+    return new Workload.Spec(arrivalProcess,
+        Integer.parseInt(options.getOrDefault("max-batch-bytes", "1000000")));
   }
 
-  private static Optional<DoubleSummaryStatistics> runAlgorand(
-      double initialTimeout, int correctNodeCount, int failedNodeCout) {
-    Random random = new Random();
-    List<Node> nodes = new ArrayList<>();
-    for (int i = 0; i < correctNodeCount; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new CorrectAlgorandNode(position, initialTimeout));
+  /**
+   * The network of each run: links limited to {@code --uplink-mbps} and {@code --downlink-mbps}
+   * megabits per second at every node, either of which defaults to unlimited, and messages
+   * gossiped through an {@code --overlay} of {@code random-regular}, {@code kademlia} or {@code
+   * nearest-neighbors} topology with {@code --overlay-degree} peers, each relay taking {@code
+   * --relay-delay} seconds. By default, nodes are fully connected with unlimited capacity.
+   *
+   * <p>Each message's extra delay, as a multiple of its best-case latency, is drawn from {@code
+   * --delay}: {@code uniform} in [0, 1) by default, {@code lognormal} with {@code --delay-median}
+   * and {@code --delay-sigma}, {@code pareto} with {@code --delay-scale} and {@code --delay-shape},
+   * or {@code empirical}, from the histogram file {@code --delay-histogram}. With {@code
+   * --spike-probability}, that many messages are instead delayed by {@code --spike-delay}.
+   */
+  private static NetworkModel parseNetworkModel(Map<String, String> options) throws IOException {
+    NetworkModel model = NetworkModel.DEFAULT;
+    DelayDistribution delays;
+    String delay = options.getOrDefault("delay", "uniform");
+    switch (delay) {
+      case "uniform":
+        delays = DelayDistribution.UNIFORM;
+        break;
+      case "lognormal":
+        delays = DelayDistribution.logNormal(
+            Double.parseDouble(options.getOrDefault("delay-median", "0.5")),
+            Double.parseDouble(options.getOrDefault("delay-sigma", "1")));
+        break;
+      case "pareto":
+        delays = DelayDistribution.pareto(
+            Double.parseDouble(options.getOrDefault("delay-scale", "0.5")),
+            Double.parseDouble(options.getOrDefault("delay-shape", "2")));
+        break;
+      case "empirical":
+        delays = DelayDistribution.empirical(Paths.get(options.get("delay-histogram")));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown delay distribution: " + delay);
+    }
+    if (options.containsKey("spike-probability")) {
+      delays = delays.withSpikes(Double.parseDouble(options.get("spike-probability")),
+          Double.parseDouble(options.getOrDefault("spike-delay", "10")));
     }
-    for (int i = 0; i < failedNodeCout; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new FailedNode(position));
+    model = model.withDelays(delays);
+    if (options.containsKey("uplink-mbps") || options.containsKey("downlink-mbps")) {
+      model = model.withCapacity(
+          1e6 * Double.parseDouble(options.getOrDefault("uplink-mbps", "Infinity")),
+          1e6 * Double.parseDouble(options.getOrDefault("downlink-mbps", "Infinity")));
     }
-    Collections.shuffle(nodes, random);
+    if (options.containsKey("overlay")) {
+      model = model.withOverlay(OverlayNetwork.Topology.parse(options.get("overlay")),
+          Integer.parseInt(options.getOrDefault("overlay-degree", "8")),
+          Double.parseDouble(options.getOrDefault("relay-delay", "0")));
+    }
+    return model;
+  }
 
-    Network network = new FullyConnectedNetwork(nodes, random);
-    Simulation simulation = new Simulation(network);
-    if (!simulation.run(TIME_LIMIT)) {
-      return Optional.empty();
+  /**
+   * Where nodes are placed: in the cloud regions of {@code --regions}, a comma-separated list of
+   * names, each optionally followed by a colon and a weight, with latencies between regions from
+   * the round trip times in the CSV file {@code --rtt-matrix} if given, and access latencies up to
+   * {@code --max-access-latency} seconds. The file is read once, for every run. By default, or with
+   * {@code --regions=uniform}, nodes are placed uniformly over the sphere, unless there's a matrix,
+   * in which case they're placed in all its regions with equal weights.
+   */
+  private static RegionTopology parseRegionTopology(Map<String, String> options)
+      throws IOException {
+    String regions = options.get("regions");
+    String rttMatrix = options.get("rtt-matrix");
+    if (rttMatrix == null && (regions == null || regions.equals("uniform"))) {
+      return null;
+    }
+    Map<String, Double> weights = null;
+    if (regions != null && !regions.equals("uniform")) {
+      weights = new LinkedHashMap<>();
+      for (String region : regions.split(",")) {
+        String[] parts = region.split(":");
+        weights.put(parts[0].trim(), parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0);
+      }
     }
+    double maxAccessLatency =
+        Double.parseDouble(options.getOrDefault("max-access-latency", "0.0005"));
+    return rttMatrix == null ? RegionTopology.create(weights, maxAccessLatency)
+        : RegionTopology.load(Paths.get(rttMatrix), weights, maxAccessLatency);
+  }
 
-    List<Node> correctNodes = nodes.stream()
-        .filter(n -> n instanceof CorrectAlgorandNode)
-        .collect(Collectors.toList());
-    if (!correctNodes.stream().allMatch(Node::hasTerminated)) {
-      System.out.println("WARNING: Not all Algorand nodes terminated.");
-      return Optional.empty();
+  /**
+   * The protocols named by {@code --protocols}, a comma-separated list, or every available protocol
+   * by default.
+   */
+  private static List<ConsensusProtocol> selectProtocols(Map<String, String> options) {
+    String names = options.get("protocols");
+    if (names == null) {
+      return ConsensusProtocol.loadAll();
     }
+    return Arrays.stream(names.split(","))
+        .map(String::trim)
+        .map(ConsensusProtocol::forName)
+        .collect(Collectors.toList());
+  }
 
-    //System.out.println("Algorand times: " + correctNodes.stream().mapToDouble(Node::getTerminationTime).sorted().boxed().collect(Collectors.toList()));
-    return Optional.of(nodes.stream()
-        .mapToDouble(Node::getTerminationTime)
-        .summaryStatistics());
+  /**
+   * The index of the protocol named by {@code --subject}, whose speedup over the best of the others
+   * is reported, or -1 if there's nothing to compare it to.
+   */
+  private static int indexOfSubject(List<ConsensusProtocol> protocols,
+      Map<String, String> options) {
+    String name = options.getOrDefault("subject", DEFAULT_SUBJECT);
+    if (protocols.size() < 2) {
+      return -1;
+    }
+    return IntStream.range(0, protocols.size())
+        .filter(p -> protocols.get(p).getName().equals(name))
+        .findFirst()
+        .orElse(-1);
   }
 
-  private static Optional<DoubleSummaryStatistics> runMir(
-      double initialTimeout, int correctNodeCount, int failedNodeCount) {
-    Random random = new Random();
-    List<Node> nodes = new ArrayList<>();
-    for (int i = 0; i < correctNodeCount; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new CorrectMirNode(position, initialTimeout));
+  /** Reorder per-protocol values so that the subject's come first, as {@link #SPEEDUP} expects. */
+  private static double[][] subjectFirst(double[][] values, int subject) {
+    double[][] reordered = new double[values.length][];
+    reordered[0] = values[subject];
+    for (int p = 0, i = 1; p < values.length; ++p) {
+      if (p != subject) {
+        reordered[i++] = values[p];
+      }
     }
-    for (int i = 0; i < failedNodeCount; ++i) {
-      EarthPosition position = EarthPosition.randomPosition(random);
-      nodes.add(new FailedNode(position));
+    return reordered;
+  }
+
+  private static double[] subjectFirst(double[] values, int subject) {
+    double[] reordered = new double[values.length];
+    reordered[0] = values[subject];
+    for (int p = 0, i = 1; p < values.length; ++p) {
+      if (p != subject) {
+        reordered[i++] = values[p];
+      }
     }
-    Collections.shuffle(nodes, random);
+    return reordered;
+  }
 
-    Network network = new FullyConnectedNetwork(nodes, random);
-    Simulation simulation = new Simulation(network);
-    if (!simulation.run(TIME_LIMIT)) {
-      return Optional.empty();
+  private static Scenario[] generatePairedScenarios(int count, int correctNodes,
+      int failedNodes, RegionTopology regions) {
+    Scenario[] scenarios = new Scenario[count];
+    for (int i = 0; i < count; ++i) {
+      scenarios[i] =
+          Scenario.generate(Util.deriveSeed(RANDOM_SEED, i), correctNodes, failedNodes, regions);
     }
+    return scenarios;
+  }
 
-    List<Node> correctNodes = nodes.stream()
-        .filter(n -> n instanceof CorrectMirNode)
-        .collect(Collectors.toList());
-    if (!correctNodes.stream().allMatch(Node::hasTerminated)) {
-      System.out.println("WARNING: Not all Mir nodes terminated.");
-      return Optional.empty();
+  /** The values of the runs which completed under every protocol, aligned by run. */
+  private static double[][] pairedValues(double[]... runValues) {
+    int runs = Arrays.stream(runValues).mapToInt(values -> values.length).min().getAsInt();
+    int[] completedRuns = IntStream.range(0, runs)
+        .filter(i -> Arrays.stream(runValues).noneMatch(values -> Double.isNaN(values[i])))
+        .toArray();
+    double[][] paired = new double[runValues.length][completedRuns.length];
+    for (int s = 0; s < runValues.length; ++s) {
+      for (int i = 0; i < completedRuns.length; ++i) {
+        paired[s][i] = runValues[s][completedRuns[i]];
+      }
     }
+    return paired;
+  }
 
-    //System.out.println("Mir times: " + correctNodes.stream().mapToDouble(Node::getTerminationTime).sorted().boxed().collect(Collectors.toList()));
-    return Optional.of(nodes.stream()
-        .mapToDouble(Node::getTerminationTime)
-        .summaryStatistics());
+  private static double[] completedValues(double[] runValues) {
+    return Arrays.stream(runValues).filter(value -> !Double.isNaN(value)).toArray();
   }
 
-  private static String statisticsToCompactString(DoubleSummaryStatistics statistics) {
-    return String.format("min=%.2f, max=%.2f, average=%.2f",
-        statistics.getMin(), statistics.getMax(), statistics.getAverage());
+  /** Parse arguments of the form {@code --name=value}. */
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+    return options;
   }
 }
@@ -1,10 +1,30 @@
 abstract class Message {
+  /**
+   * The size of a message without a block, in bytes: its type, height and cycle, the hash of its
+   * proposal, and the sender's signature. Votes are this size, since they carry only the hash.
+   */
+  static final int HEADER_BYTES = 128;
+
+  /** The height being decided, which is the sender's current height unless given explicitly. */
+  private final int height;
   private final int cycle;
   private final Proposal proposal;
+  /** The ID of the node which sent this message. */
+  private final int senderId;
+
+  Message(int cycle, Proposal proposal, Node sender) {
+    this(sender.getHeight(), cycle, proposal, sender);
+  }
 
-  Message(int cycle, Proposal proposal) {
+  Message(int height, int cycle, Proposal proposal, Node sender) {
+    this.height = height;
     this.cycle = cycle;
     this.proposal = proposal;
+    this.senderId = sender.getId();
+  }
+
+  int getHeight() {
+    return height;
   }
 
   int getCycle() {
@@ -14,66 +34,87 @@ abstract class Message {
   Proposal getProposal() {
     return proposal;
   }
+
+  int getSenderId() {
+    return senderId;
+  }
+
+  /** The size of this message on the wire, in bytes. */
+  int getSizeBytes() {
+    return HEADER_BYTES;
+  }
 }
 
 class ProposalMessage extends Message {
-  ProposalMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  ProposalMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
+  }
+
+  /** A proposal for a later height than the sender's, sent early when heights are pipelined. */
+  ProposalMessage(int height, int cycle, Proposal proposal, Node sender) {
+    super(height, cycle, proposal, sender);
+  }
+
+  @Override int getSizeBytes() {
+    return HEADER_BYTES + getProposal().getSizeBytes();
   }
 
   @Override public String toString() {
-    return String.format("ProposalMessage[cycle=%d, proposal=%s]", getCycle(), getProposal());
+    return String.format("ProposalMessage[height=%d, cycle=%d, proposal=%s, sender=%d]",
+        getHeight(), getCycle(), getProposal(), getSenderId());
   }
 }
 
 /** A Tendermint pre-vote message */
 class PreVoteMessage extends Message {
-  PreVoteMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  PreVoteMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
   }
 
   @Override public String toString() {
-    return String.format("PreVoteMessage[cycle=%d, proposal=%s]", getCycle(), getProposal());
+    return String.format("PreVoteMessage[cycle=%d, proposal=%s, sender=%d]",
+        getCycle(), getProposal(), getSenderId());
   }
 }
 
 /** A Tendermint pre-commit message */
 class PreCommitMessage extends Message {
-  PreCommitMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  PreCommitMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
   }
 
   @Override public String toString() {
-    return String.format("PreCommitMessage[cycle=%d, proposal=%s]", getCycle(), getProposal());
+    return String.format("PreCommitMessage[cycle=%d, proposal=%s, sender=%d]",
+        getCycle(), getProposal(), getSenderId());
   }
 }
 
 /** An Algorand soft-vote message */
 class SoftVoteMessage extends Message {
-  SoftVoteMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  SoftVoteMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
   }
 }
 
 /** An Algorand cert-vote message */
 class CertVoteMessage extends Message {
-  CertVoteMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  CertVoteMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
   }
 }
 
 /** An Algorand next-vote message */
 class NextVoteMessage extends Message {
-  NextVoteMessage(int cycle, Proposal proposal) {
-    super(cycle, proposal);
+  NextVoteMessage(int cycle, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
   }
 }
 
 abstract class MirVoteMessage extends Message {
   private final int round;
 
-  MirVoteMessage(int cycle, int round, Proposal proposal) {
-    super(cycle, proposal);
+  MirVoteMessage(int cycle, int round, Proposal proposal, Node sender) {
+    super(cycle, proposal, sender);
     this.round = round;
   }
 
@@ -85,13 +126,157 @@ abstract class MirVoteMessage extends Message {
 /** A Mir prepare-vote message */
 class PrepareVoteMessage extends MirVoteMessage {
   PrepareVoteMessage(int cycle, int round, Proposal proposal, Node sender) {
-    super(cycle, round, proposal);
+    super(cycle, round, proposal, sender);
   }
 }
 
 /** A Mir commit-vote message */
 class CommitVoteMessage extends MirVoteMessage {
   CommitVoteMessage(int cycle, int round, Proposal proposal, Node sender) {
-    super(cycle, round, proposal);
+    super(cycle, round, proposal, sender);
+  }
+}
+
+/**
+ * A HotStuff proposal, broadcast by the leader of a view along with the highest quorum certificate
+ * it knows of, which justifies it. In chained HotStuff, the proposal is a {@link HotStuffBlock}.
+ */
+class HotStuffProposalMessage extends Message {
+  private final QuorumCertificate justify;
+
+  HotStuffProposalMessage(int view, Proposal proposal, QuorumCertificate justify, Node sender) {
+    super(view, proposal, sender);
+    this.justify = justify;
+  }
+
+  /** A proposal for a later height than the sender's, sent early when heights are pipelined. */
+  HotStuffProposalMessage(int height, int view, Proposal proposal, QuorumCertificate justify,
+      Node sender) {
+    super(height, view, proposal, sender);
+    this.justify = justify;
+  }
+
+  /** The certificate justifying this proposal, or null if it extends the genesis block. */
+  QuorumCertificate getJustify() {
+    return justify;
+  }
+
+  @Override int getSizeBytes() {
+    return HEADER_BYTES + getProposal().getSizeBytes()
+        + (justify == null ? 0 : QuorumCertificate.SIZE_BYTES);
+  }
+}
+
+/**
+ * A HotStuff vote, which is sent only to the leader who aggregates it into a certificate: the
+ * leader of the same view in basic HotStuff, or of the next view in chained HotStuff.
+ */
+class HotStuffVoteMessage extends Message {
+  private final QuorumCertificate.Phase phase;
+
+  HotStuffVoteMessage(int view, QuorumCertificate.Phase phase, Proposal proposal, Node sender) {
+    super(view, proposal, sender);
+    this.phase = phase;
+  }
+
+  QuorumCertificate.Phase getPhase() {
+    return phase;
+  }
+}
+
+/** A basic HotStuff leader's broadcast of a certificate it aggregated, starting the next phase. */
+class QuorumCertificateMessage extends Message {
+  private final QuorumCertificate certificate;
+
+  QuorumCertificateMessage(QuorumCertificate certificate, Node sender) {
+    super(certificate.getView(), certificate.getProposal(), sender);
+    this.certificate = certificate;
+  }
+
+  QuorumCertificate getCertificate() {
+    return certificate;
+  }
+
+  @Override int getSizeBytes() {
+    return HEADER_BYTES + QuorumCertificate.SIZE_BYTES;
+  }
+}
+
+/** A HotStuff new-view message, sent to the leader of a view upon entering it after a timeout. */
+class NewViewMessage extends Message {
+  private final QuorumCertificate highestCertificate;
+
+  NewViewMessage(int view, QuorumCertificate highestCertificate, Node sender) {
+    super(view, null, sender);
+    this.highestCertificate = highestCertificate;
+  }
+
+  /** The highest prepare certificate known to the sender, or null if it has none. */
+  QuorumCertificate getHighestCertificate() {
+    return highestCertificate;
+  }
+
+  @Override int getSizeBytes() {
+    return HEADER_BYTES + (highestCertificate == null ? 0 : QuorumCertificate.SIZE_BYTES);
+  }
+}
+
+/**
+ * A HotStuff quorum certificate: a quorum of votes for a proposal in some view and phase, which a
+ * leader aggregates into a single message-sized object, e.g. with threshold signatures.
+ */
+class QuorumCertificate {
+  /**
+   * The size of a certificate, in bytes: its view, phase and proposal hash, and one aggregate
+   * signature, which is what makes it no bigger than a vote however large the quorum.
+   */
+  static final int SIZE_BYTES = 128;
+
+  enum Phase {
+    /** The phases of basic HotStuff, each of which certifies the proposal for the next. */
+    PREPARE, PRE_COMMIT, COMMIT,
+    /** The single phase of chained HotStuff, whose certificates are pipelined across views. */
+    GENERIC;
+
+    /** The phase following this one in basic HotStuff, or null after the commit phase. */
+    Phase next() {
+      switch (this) {
+        case PREPARE:
+          return PRE_COMMIT;
+        case PRE_COMMIT:
+          return COMMIT;
+        case COMMIT:
+          return null;
+        default:
+          throw new AssertionError("No next phase of " + this);
+      }
+    }
+  }
+
+  private final int view;
+  private final Phase phase;
+  private final Proposal proposal;
+
+  QuorumCertificate(int view, Phase phase, Proposal proposal) {
+    this.view = view;
+    this.phase = phase;
+    this.proposal = proposal;
+  }
+
+  int getView() {
+    return view;
+  }
+
+  Phase getPhase() {
+    return phase;
+  }
+
+  Proposal getProposal() {
+    return proposal;
+  }
+
+  /** Whether this certificate is for a later view than {@code that}, which may be null. */
+  boolean isHigherThan(QuorumCertificate that) {
+    return that == null || view > that.view;
   }
 }
@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The Mir protocol, run by {@link CorrectMirNode}. */
+public class MirProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "mir";
+  }
+
+  @Override public String getDisplayName() {
+    return "Mir";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectMirNode(position, initialTimeout);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("cycles_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("cycles_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectMirNode) node).getCycleCount()));
+  }
+}
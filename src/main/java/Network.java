@@ -1,5 +1,5 @@
 import java.util.List;
-import java.util.Random;
+import java.util.stream.Collectors;
 
 abstract class Network {
   /** The speed of light in a vacuum, in meters per second. */
@@ -9,9 +9,20 @@ abstract class Network {
   static double SPEED_OF_FIBER = speedOfLight(1.4682);
 
   private final List<Node> nodes;
+  private final LatencyMatrix baseLatencies;
 
-  Network(List<Node> nodes) {
+  /**
+   * @param nodes the nodes, which are assigned IDs by their index
+   * @param latencyMatrixCache a cache to fetch the base latency matrix from, or null to compute it
+   */
+  Network(List<Node> nodes, LatencyMatrix.Cache latencyMatrixCache) {
     this.nodes = nodes;
+    for (int i = 0; i < nodes.size(); ++i) {
+      nodes.get(i).setId(i);
+    }
+    this.baseLatencies = latencyMatrixCache != null
+        ? latencyMatrixCache.get(nodes)
+        : LatencyMatrix.compute(nodes.stream().map(Node::getPosition).collect(Collectors.toList()));
   }
 
   List<Node> getNodes() {
@@ -23,12 +34,62 @@ abstract class Network {
     return nodes.get(index % nodes.size());
   }
 
+  /**
+   * The best-case one-way latency, in seconds, from {@code source} to {@code destination}, i.e. the
+   * time taken to travel the great-circle distance through fiber.
+   */
+  double getBaseLatency(Node source, Node destination) {
+    return baseLatencies.get(source.getId(), destination.getId());
+  }
+
   /**
    * The one-way latency, in seconds, taken to deliver a message from {@code source} to
    * {@code destination}.
    */
   abstract double getLatency(Node source, Node destination);
 
+  /**
+   * The time at which {@code message}, sent from {@code source} at {@code time}, is delivered to
+   * {@code destination}. By default this is just the latency after it's sent, whatever the size of
+   * the message, and draws the same random numbers as {@link #getLatency}.
+   */
+  double getArrivalTime(Node source, Node destination, Message message, double time) {
+    return time + getLatency(source, destination);
+  }
+
+  /**
+   * The number of messages between distinct nodes it takes to deliver a broadcast from a correct
+   * node to every other node. By default each is sent directly.
+   */
+  long getBroadcastMessageCount() {
+    return nodes.size() - 1;
+  }
+
+  /**
+   * The number of messages between distinct nodes it takes to deliver a message from {@code
+   * source} to {@code destination}.
+   */
+  int getHopCount(Node source, Node destination) {
+    return source == destination ? 0 : 1;
+  }
+
+  /**
+   * A lower bound on {@link #getLatency}, which a parallel {@link Simulation} uses as lookahead. By
+   * default this is the base latency, since nothing travels faster than light through fiber.
+   */
+  double getMinLatency(Node source, Node destination) {
+    return getBaseLatency(source, destination);
+  }
+
+  /**
+   * Whether the latencies drawn for each source depend only on that source's own sequence of
+   * draws, and not on how draws for different sources interleave. A parallel {@link Simulation}
+   * requires this, since its partitions draw latencies concurrently.
+   */
+  boolean hasIndependentSources() {
+    return false;
+  }
+
   /** The speed of light through a medium with a given index of refraction, in meters per second. */
   private static double speedOfLight(double refractiveIndex) {
     return SPEED_OF_LIGHT / refractiveIndex;
@@ -37,19 +98,58 @@ abstract class Network {
 
 /**
  * A network in which all nodes are directly connected through a fiber optic cable, but there are
- * random delays up to 3x.
+ * random delays, drawn from a {@link DelayDistribution}, which by default are up to 2x.
  */
 class FullyConnectedNetwork extends Network {
-  private final Random random;
+  private final RandomStream random;
+  /** A separate random stream for each source, indexed by node ID, or null to share one. */
+  private final RandomStream[] sourceRandoms;
+  private final DelayDistribution delays;
+
+  FullyConnectedNetwork(List<Node> nodes, RandomStream random) {
+    this(nodes, random, null);
+  }
+
+  FullyConnectedNetwork(List<Node> nodes, RandomStream random,
+      LatencyMatrix.Cache latencyMatrixCache) {
+    this(nodes, random, latencyMatrixCache, false);
+  }
 
-  FullyConnectedNetwork(List<Node> nodes, Random random) {
-    super(nodes);
+  /**
+   * @param independentSources whether to draw each source's delays from its own random stream,
+   *     seeded from {@code random}, so that the network can be used by a parallel simulation
+   */
+  FullyConnectedNetwork(List<Node> nodes, RandomStream random,
+      LatencyMatrix.Cache latencyMatrixCache, boolean independentSources) {
+    this(nodes, random, latencyMatrixCache, independentSources, DelayDistribution.UNIFORM);
+  }
+
+  /** @param delays the distribution of each message's extra delay */
+  FullyConnectedNetwork(List<Node> nodes, RandomStream random,
+      LatencyMatrix.Cache latencyMatrixCache, boolean independentSources,
+      DelayDistribution delays) {
+    super(nodes, latencyMatrixCache);
     this.random = random;
+    this.delays = delays;
+    if (independentSources) {
+      long seed = random.nextLong();
+      sourceRandoms = new RandomStream[nodes.size()];
+      for (int i = 0; i < sourceRandoms.length; ++i) {
+        sourceRandoms[i] = RandomStream.derive(seed, i);
+      }
+    } else {
+      sourceRandoms = null;
+    }
   }
 
   double getLatency(Node source, Node destination) {
-    double bestCaseLatency = source.getDistance(destination) / Network.SPEED_OF_FIBER;
-    double multiplier = 1 + random.nextDouble();
+    double bestCaseLatency = getBaseLatency(source, destination);
+    RandomStream sourceRandom = sourceRandoms != null ? sourceRandoms[source.getId()] : random;
+    double multiplier = 1 + delays.sample(sourceRandom);
     return multiplier * bestCaseLatency;
   }
+
+  @Override boolean hasIndependentSources() {
+    return sourceRandoms != null;
+  }
 }
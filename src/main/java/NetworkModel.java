@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * How the network of each run is built from its nodes. By default it's fully connected, delays are
+ * uniform, and links have unlimited capacity, so a message's size doesn't affect its latency.
+ */
+class NetworkModel {
+  static final NetworkModel DEFAULT = new NetworkModel(DelayDistribution.UNIFORM,
+      Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, null, 0, 0);
+
+  private final DelayDistribution delays;
+  private final double uplinkCapacity;
+  private final double downlinkCapacity;
+  /** The overlay through which messages are gossiped, or null if nodes are fully connected. */
+  private final OverlayNetwork.Topology topology;
+  private final int degree;
+  private final double relayDelay;
+
+  private NetworkModel(DelayDistribution delays, double uplinkCapacity, double downlinkCapacity,
+      OverlayNetwork.Topology topology, int degree, double relayDelay) {
+    this.delays = delays;
+    this.uplinkCapacity = uplinkCapacity;
+    this.downlinkCapacity = downlinkCapacity;
+    this.topology = topology;
+    this.degree = degree;
+    this.relayDelay = relayDelay;
+  }
+
+  /** This model, but with each message's extra delay drawn from {@code delays}. */
+  NetworkModel withDelays(DelayDistribution delays) {
+    return new NetworkModel(delays, uplinkCapacity, downlinkCapacity, topology, degree, relayDelay);
+  }
+
+  /**
+   * This model, but with every node's uplink and downlink limited to the given capacities, in bits
+   * per second, either of which may be infinite.
+   */
+  NetworkModel withCapacity(double uplinkCapacity, double downlinkCapacity) {
+    if (!(uplinkCapacity > 0) || !(downlinkCapacity > 0)) {
+      throw new IllegalArgumentException("Need positive capacities");
+    }
+    return new NetworkModel(delays, uplinkCapacity, downlinkCapacity, topology, degree, relayDelay);
+  }
+
+  /**
+   * This model, but with messages gossiped through an overlay of the given topology, rather than
+   * sent directly.
+   *
+   * @param relayDelay the time each relay takes before forwarding a message, in seconds
+   */
+  NetworkModel withOverlay(OverlayNetwork.Topology topology, int degree, double relayDelay) {
+    return new NetworkModel(delays, uplinkCapacity, downlinkCapacity, topology, degree, relayDelay);
+  }
+
+  /** Whether links have limited capacity, so that message sizes matter. */
+  boolean hasLimitedCapacity() {
+    return uplinkCapacity < Double.POSITIVE_INFINITY || downlinkCapacity < Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Create a network of the given nodes, drawing each source's jitter from its own stream seeded
+   * by {@code random}, and choosing any overlay's peers with {@code topologyRandom}.
+   */
+  Network create(List<Node> nodes, RandomStream random, RandomStream topologyRandom,
+      LatencyMatrix.Cache latencyMatrixCache) {
+    if (topology != null) {
+      if (hasLimitedCapacity()) {
+        throw new IllegalArgumentException("Overlays with limited capacity are unsupported");
+      }
+      return new OverlayNetwork(nodes, random, latencyMatrixCache, true, delays, topology,
+          degree, relayDelay, topologyRandom);
+    }
+    if (!hasLimitedCapacity()) {
+      return new FullyConnectedNetwork(nodes, random, latencyMatrixCache, true, delays);
+    }
+    double[] uplinkCapacities = new double[nodes.size()];
+    double[] downlinkCapacities = new double[nodes.size()];
+    Arrays.fill(uplinkCapacities, uplinkCapacity);
+    Arrays.fill(downlinkCapacities, downlinkCapacity);
+    return new BandwidthNetwork(nodes, random, latencyMatrixCache, true, delays,
+        uplinkCapacities, downlinkCapacities);
+  }
+}
@@ -1,7 +1,25 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
 abstract class Node {
   private final EarthPosition position;
+  /** A dense index identifying this node within its network, assigned by {@link Network}. */
+  private int id = -1;
   private Proposal output;
   private double terminationTime;
+  private HeightSchedule heightSchedule = HeightSchedule.SINGLE;
+  /** The height currently being decided, which is also the number of heights decided so far. */
+  private int height = 0;
+  /** The time at which each height was decided, indexed by height. */
+  private double[] commitTimes = new double[1];
+  /** Messages for later heights, held until this node reaches them. */
+  private final List<Message> deferredMessages = new ArrayList<>();
+  /** The latest height whose first proposal this node sent early, or -1 if there's none. */
+  private int pipelinedHeight = -1;
+  /** The transactions this node has received, or null if the run has no workload. */
+  private Workload.Mempool mempool;
 
   Node(EarthPosition position) {
     this.position = position;
@@ -22,6 +40,124 @@ abstract class Node {
     this.terminationTime = terminationTime;
   }
 
+  /**
+   * Record the decision of the current height, and move on to the next one unless the height
+   * schedule is done, in which case this node terminates.
+   *
+   * @return whether this node should go on to decide the next height
+   */
+  boolean commit(Proposal output, double time) {
+    if (height == commitTimes.length) {
+      commitTimes = Arrays.copyOf(commitTimes, 2 * height);
+    }
+    commitTimes[height++] = time;
+    if (mempool != null) {
+      mempool.commit(output, time);
+    }
+    if (heightSchedule.isDone(height, time)) {
+      terminate(output, time);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Whether {@code message} is for the current height. Messages for later heights are deferred
+   * until {@link #replayDeferredMessages}, and messages for earlier heights are dropped.
+   */
+  boolean acceptMessage(Message message) {
+    if (message.getHeight() > height) {
+      deferredMessages.add(message);
+    }
+    return message.getHeight() == height;
+  }
+
+  /**
+   * Deliver any deferred messages for the current height, as if they had just arrived. Called by
+   * protocols once they've begun a new height.
+   */
+  void replayDeferredMessages(Simulation simulation, double time) {
+    List<Message> ready = new ArrayList<>();
+    for (Iterator<Message> iterator = deferredMessages.iterator(); iterator.hasNext(); ) {
+      Message message = iterator.next();
+      if (message.getHeight() == height) {
+        ready.add(message);
+        iterator.remove();
+      }
+    }
+    int replayHeight = height;
+    for (Message message : ready) {
+      if (hasTerminated() || height != replayHeight) {
+        // The rest are now for an earlier height.
+        return;
+      }
+      onMessageEvent(new MessageEvent(time, this, message), simulation);
+    }
+  }
+
+  /**
+   * Called once this node has voted to commit a proposal at the current height. If heights are
+   * pipelined, there's a next height, and this node leads its first cycle, this claims the right to
+   * propose it now, rather than once the current height is decided.
+   *
+   * @return whether this node should propose the next height now
+   */
+  boolean claimPipelinedProposal(Simulation simulation, double time) {
+    if (!heightSchedule.isPipelined() || heightSchedule.isDone(height + 1, time)
+        || pipelinedHeight > height || !equals(simulation.getLeader(height + 1))) {
+      return false;
+    }
+    pipelinedHeight = height + 1;
+    return true;
+  }
+
+  /** Whether this node already proposed the first cycle of the current height early. */
+  boolean hasPipelinedProposal() {
+    return pipelinedHeight == height;
+  }
+
+  /**
+   * The transactions to include in a block proposed at {@code time}, excluding those of any
+   * {@code pending} blocks which it follows but which aren't yet committed. There are none if the
+   * run has no workload.
+   */
+  Transaction[] selectTransactions(double time, Proposal... pending) {
+    return mempool == null ? new Transaction[0] : mempool.selectBatch(time, pending);
+  }
+
+  void setMempool(Workload.Mempool mempool) {
+    this.mempool = mempool;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  /** The time at which each height was decided, in order of height. */
+  double[] getCommitTimes() {
+    return Arrays.copyOf(commitTimes, height);
+  }
+
+  HeightSchedule getHeightSchedule() {
+    return heightSchedule;
+  }
+
+  void setHeightSchedule(HeightSchedule heightSchedule) {
+    this.heightSchedule = heightSchedule;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  void setId(int id) {
+    this.id = id;
+  }
+
+  EarthPosition getPosition() {
+    return position;
+  }
+
   /** The great-circle distance to another node, in meters. */
   double getDistance(Node that) {
     return this.position.getDistance(that.position);
@@ -0,0 +1,315 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A network in which nodes are connected only to their peers in an overlay, and messages are
+ * gossiped: each correct node relays the first copy of a message it receives to all its other
+ * peers, and ignores any duplicates. Failed nodes relay nothing.
+ *
+ * <p>With duplicate suppression, a message first reaches each node along the path of least
+ * best-case latency through correct relays, so these paths are computed once per topology, and a
+ * message's latency is its path's latency with the same delays as a {@link FullyConnectedNetwork}.
+ */
+class OverlayNetwork extends FullyConnectedNetwork {
+  /** How peers are chosen. */
+  enum Topology {
+    /** Each node has about {@code degree} peers chosen uniformly at random. */
+    RANDOM_REGULAR,
+    /**
+     * Each node has a random ID, and keeps up to {@code degree} peers in each bucket of XOR
+     * distance from it, as in Kademlia, so that it knows more of the peers whose IDs are close.
+     */
+    KADEMLIA,
+    /** Each node is connected to the {@code degree} nodes with the lowest latency from it. */
+    NEAREST_NEIGHBORS;
+
+    static Topology parse(String name) {
+      return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private final int size;
+  /** The best-case latency of the path from each node to each other, indexed by both IDs. */
+  private final double[] pathLatencies;
+  /** The number of hops on each of those paths. */
+  private final int[] pathHops;
+  /** The number of messages sent by correct nodes to gossip a message to every node. */
+  private final long broadcastMessageCount;
+
+  /**
+   * @param topologyRandom the source of randomness for choosing peers
+   * @param relayDelay the time each relay takes to process a message before forwarding it, in
+   *     seconds
+   */
+  OverlayNetwork(List<Node> nodes, RandomStream random, LatencyMatrix.Cache latencyMatrixCache,
+      boolean independentSources, DelayDistribution delays, Topology topology, int degree,
+      double relayDelay, RandomStream topologyRandom) {
+    super(nodes, random, latencyMatrixCache, independentSources, delays);
+    if (degree < 1) {
+      throw new IllegalArgumentException("Need at least one peer per node");
+    }
+    this.size = nodes.size();
+    BitSet correct = new BitSet(size);
+    for (Node node : nodes) {
+      if (!(node instanceof FailedNode)) {
+        correct.set(node.getId());
+      }
+    }
+
+    List<BitSet> peers = choosePeers(topology, degree, topologyRandom);
+    connectComponents(peers, correct, topologyRandom);
+    int[][] adjacency = new int[size][];
+    long correctDegrees = 0;
+    for (int i = 0; i < size; ++i) {
+      adjacency[i] = peers.get(i).stream().toArray();
+      if (correct.get(i)) {
+        correctDegrees += adjacency[i].length;
+      }
+    }
+    // The source sends to all its peers, and every other correct node to all but one.
+    this.broadcastMessageCount = correctDegrees - (correct.cardinality() - 1);
+
+    this.pathLatencies = new double[size * size];
+    this.pathHops = new int[size * size];
+    PathFinder pathFinder = new PathFinder(adjacency, correct, relayDelay);
+    for (int source = 0; source < size; ++source) {
+      pathFinder.run(source);
+    }
+  }
+
+  /** The best-case latency from {@code source} to {@code destination} through the overlay. */
+  @Override double getBaseLatency(Node source, Node destination) {
+    return pathLatencies[source.getId() * size + destination.getId()];
+  }
+
+  @Override long getBroadcastMessageCount() {
+    return broadcastMessageCount;
+  }
+
+  @Override int getHopCount(Node source, Node destination) {
+    return pathHops[source.getId() * size + destination.getId()];
+  }
+
+  /** Each node's peers, which are symmetric, since each connection carries messages both ways. */
+  private List<BitSet> choosePeers(Topology topology, int degree, RandomStream random) {
+    List<BitSet> peers = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      peers.add(new BitSet(size));
+    }
+    switch (topology) {
+      case RANDOM_REGULAR: {
+        // Pair up degree stubs per node at random, dropping self-loops and duplicate connections,
+        // so that degrees are at most, and typically close to, the target.
+        List<Integer> stubs = new ArrayList<>(size * degree);
+        for (int i = 0; i < size; ++i) {
+          for (int d = 0; d < degree; ++d) {
+            stubs.add(i);
+          }
+        }
+        Util.shuffle(stubs, random);
+        for (int s = 0; s + 1 < stubs.size(); s += 2) {
+          connect(peers, stubs.get(s), stubs.get(s + 1));
+        }
+        break;
+      }
+      case KADEMLIA: {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; ++i) {
+          ids[i] = random.nextLong();
+        }
+        List<List<Integer>> buckets = new ArrayList<>(Long.SIZE);
+        for (int b = 0; b < Long.SIZE; ++b) {
+          buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; ++i) {
+          for (List<Integer> bucket : buckets) {
+            bucket.clear();
+          }
+          for (int j = 0; j < size; ++j) {
+            if (j != i) {
+              buckets.get(Long.numberOfLeadingZeros(ids[i] ^ ids[j])).add(j);
+            }
+          }
+          for (List<Integer> bucket : buckets) {
+            Util.shuffle(bucket, random);
+            for (int j : bucket.subList(0, Math.min(degree, bucket.size()))) {
+              connect(peers, i, j);
+            }
+          }
+        }
+        break;
+      }
+      case NEAREST_NEIGHBORS: {
+        Node[] nodes = getNodes().toArray(new Node[0]);
+        double[] latencies = new double[size];
+        for (int i = 0; i < size; ++i) {
+          for (int j = 0; j < size; ++j) {
+            latencies[j] = super.getBaseLatency(nodes[i], nodes[j]);
+          }
+          int[] nearest = Util.sortedIndices(latencies, size);
+          // The nearest node is typically the node itself, which connect ignores.
+          for (int k = 0, added = 0; k < size && added < degree; ++k) {
+            if (nearest[k] != i) {
+              connect(peers, i, nearest[k]);
+              ++added;
+            }
+          }
+        }
+        break;
+      }
+      default:
+        throw new AssertionError("Unknown topology " + topology);
+    }
+    return peers;
+  }
+
+  /**
+   * Add random connections until every correct node can reach every other through correct relays,
+   * and every failed node has a correct peer, as peer discovery would. Without this, some nodes
+   * might never receive any message.
+   */
+  private void connectComponents(List<BitSet> peers, BitSet correct, RandomStream random) {
+    int[] correctIds = correct.stream().toArray();
+    if (correctIds.length == 0) {
+      return;
+    }
+    while (true) {
+      // Find the correct nodes reachable from the first one.
+      BitSet reached = new BitSet(size);
+      int[] stack = new int[size];
+      int top = 0;
+      stack[top++] = correctIds[0];
+      reached.set(correctIds[0]);
+      while (top > 0) {
+        int node = stack[--top];
+        for (int peer = peers.get(node).nextSetBit(0); peer >= 0;
+            peer = peers.get(node).nextSetBit(peer + 1)) {
+          if (correct.get(peer) && !reached.get(peer)) {
+            reached.set(peer);
+            stack[top++] = peer;
+          }
+        }
+      }
+      BitSet unreached = (BitSet) correct.clone();
+      unreached.andNot(reached);
+      if (unreached.isEmpty()) {
+        break;
+      }
+      int[] reachedIds = reached.stream().toArray();
+      connect(peers, unreached.nextSetBit(0), reachedIds[random.nextInt(reachedIds.length)]);
+    }
+
+    for (int i = correct.nextClearBit(0); i < size; i = correct.nextClearBit(i + 1)) {
+      if (!peers.get(i).intersects(correct)) {
+        connect(peers, i, correctIds[random.nextInt(correctIds.length)]);
+      }
+    }
+  }
+
+  private static void connect(List<BitSet> peers, int a, int b) {
+    if (a != b) {
+      peers.get(a).set(b);
+      peers.get(b).set(a);
+    }
+  }
+
+  /**
+   * Dijkstra's algorithm over the overlay, expanding only correct nodes, with a binary heap which
+   * is reused for every source.
+   */
+  private class PathFinder {
+    private final int[][] adjacency;
+    private final BitSet correct;
+    private final double relayDelay;
+    private final double[] latencies;
+    private final int[] hops;
+    private final BitSet settled;
+    /** Heap entries, as parallel arrays of keys and nodes, which may hold stale duplicates. */
+    private double[] heapKeys;
+    private int[] heapNodes;
+    private int heapSize;
+
+    PathFinder(int[][] adjacency, BitSet correct, double relayDelay) {
+      this.adjacency = adjacency;
+      this.correct = correct;
+      this.relayDelay = relayDelay;
+      this.latencies = new double[size];
+      this.hops = new int[size];
+      this.settled = new BitSet(size);
+      this.heapKeys = new double[size];
+      this.heapNodes = new int[size];
+    }
+
+    /** Fill in the paths from {@code source} to every node. */
+    void run(int source) {
+      List<Node> nodes = getNodes();
+      Arrays.fill(latencies, Double.POSITIVE_INFINITY);
+      settled.clear();
+      latencies[source] = 0;
+      hops[source] = 0;
+      push(0, source);
+      while (heapSize > 0) {
+        int node = pop();
+        if (settled.get(node)) {
+          continue;
+        }
+        settled.set(node);
+        if (node != source && !correct.get(node)) {
+          continue;
+        }
+        // Every hop after the first waits for a relay to process the message.
+        double delay = node == source ? 0 : relayDelay;
+        for (int peer : adjacency[node]) {
+          double latency = latencies[node] + delay
+              + OverlayNetwork.super.getBaseLatency(nodes.get(node), nodes.get(peer));
+          if (latency < latencies[peer]) {
+            latencies[peer] = latency;
+            hops[peer] = hops[node] + 1;
+            push(latency, peer);
+          }
+        }
+      }
+      System.arraycopy(latencies, 0, pathLatencies, source * size, size);
+      System.arraycopy(hops, 0, pathHops, source * size, size);
+    }
+
+    private void push(double key, int node) {
+      if (heapSize == heapKeys.length) {
+        heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+        heapNodes = Arrays.copyOf(heapNodes, 2 * heapSize);
+      }
+      int i = heapSize++;
+      while (i > 0 && heapKeys[(i - 1) / 2] > key) {
+        heapKeys[i] = heapKeys[(i - 1) / 2];
+        heapNodes[i] = heapNodes[(i - 1) / 2];
+        i = (i - 1) / 2;
+      }
+      heapKeys[i] = key;
+      heapNodes[i] = node;
+    }
+
+    private int pop() {
+      int top = heapNodes[0];
+      double key = heapKeys[--heapSize];
+      int node = heapNodes[heapSize];
+      int i = 0;
+      while (2 * i + 1 < heapSize) {
+        int child = 2 * i + 1;
+        if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+          ++child;
+        }
+        if (heapKeys[child] >= key) {
+          break;
+        }
+        heapKeys[i] = heapKeys[child];
+        heapNodes[i] = heapNodes[child];
+        i = child;
+      }
+      heapKeys[i] = key;
+      heapNodes[i] = node;
+      return top;
+    }
+  }
+}
@@ -1,3 +1,103 @@
-/** Represents a proposed block. */
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Represents a proposed block, carrying a batch of transactions. */
 class Proposal {
+  private static final Transaction[] NO_TRANSACTIONS = new Transaction[0];
+
+  private final Transaction[] transactions;
+  private final int sizeBytes;
+
+  /** An empty block, as proposed when there's no workload. */
+  Proposal() {
+    this(NO_TRANSACTIONS);
+  }
+
+  Proposal(Transaction[] transactions) {
+    this.transactions = transactions;
+    int size = 0;
+    for (Transaction transaction : transactions) {
+      size += transaction.getSizeBytes();
+    }
+    this.sizeBytes = size;
+  }
+
+  Transaction[] getTransactions() {
+    return transactions;
+  }
+
+  /** The total size of this block's transactions, in bytes. */
+  int getSizeBytes() {
+    return sizeBytes;
+  }
+}
+
+/**
+ * A block of chained HotStuff, which extends the block certified by its justifying certificate.
+ * Blocks proposed in consecutive views form the chains by which earlier blocks are committed.
+ *
+ * <p>Every node sees the same block objects, so a block's link to its parent is only cut once every
+ * correct node has committed it. No node then looks behind it, and the chain it committed can be
+ * released, rather than staying reachable from every later block for the rest of a run.
+ */
+class HotStuffBlock extends Proposal {
+  private final int view;
+  /** The justifying certificate, which is cleared once every correct node has committed this. */
+  private QuorumCertificate justify;
+  /** The number of nodes which have committed this block, which may do so concurrently. */
+  private final AtomicInteger commitCount = new AtomicInteger();
+
+  /**
+   * @param justify the certificate of the block this one extends, or null to extend the genesis
+   *     block
+   */
+  HotStuffBlock(int view, QuorumCertificate justify, Transaction[] transactions) {
+    super(transactions);
+    this.view = view;
+    this.justify = justify;
+  }
+
+  int getView() {
+    return view;
+  }
+
+  /**
+   * The certificate of the block this one extends, or null if it extends the genesis block or has
+   * been committed by every correct node.
+   */
+  QuorumCertificate getJustify() {
+    return justify;
+  }
+
+  /**
+   * The block this one extends, or null if it extends the genesis block or has been committed by
+   * every correct node.
+   */
+  HotStuffBlock getParent() {
+    QuorumCertificate justify = this.justify;
+    return justify == null ? null : (HotStuffBlock) justify.getProposal();
+  }
+
+  /**
+   * Record that a node has committed this block, cutting the link to its parent once all {@code
+   * correctNodeCount} correct nodes have.
+   */
+  void recordCommit(int correctNodeCount) {
+    if (commitCount.incrementAndGet() == correctNodeCount) {
+      justify = null;
+    }
+  }
+
+  /**
+   * Whether this block is {@code ancestor} or one of its descendants. Views increase along a chain,
+   * so the search stops at the ancestor's view.
+   */
+  boolean extendsBlock(HotStuffBlock ancestor) {
+    for (HotStuffBlock block = this; block != null && block.view >= ancestor.view;
+        block = block.getParent()) {
+      if (block == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the votes for each proposal in a single tally, and tracks which proposals have reached a
+ * quorum. A tally rarely sees more than a couple of distinct proposals (including nil, represented
+ * by null), so they're kept in small arrays with primitive counters. The proposals with a quorum
+ * are maintained as votes arrive, so querying them doesn't rescan the counts or allocate.
+ *
+ * <p>The voters for each proposal are recorded in a bit set indexed by node ID, so a repeated vote
+ * from the same node for the same proposal is only counted once.
+ */
+class QuorumTracker {
+  private final int quorumSize;
+  private Proposal[] proposals = new Proposal[2];
+  private int[] counts = new int[2];
+  private BitSet[] voters = new BitSet[2];
+  private int proposalCount = 0;
+  /** The number of votes counted, for any proposal. */
+  private int voteCount = 0;
+  private final List<Proposal> quorumProposals = new ArrayList<>(1);
+  private final List<Proposal> quorumProposalsView = Collections.unmodifiableList(quorumProposals);
+
+  QuorumTracker(int quorumSize) {
+    this.quorumSize = quorumSize;
+  }
+
+  /**
+   * Count a vote for the given proposal, unless the same voter already voted for it.
+   *
+   * @return whether this vote caused the proposal to reach a quorum
+   */
+  boolean addVote(Proposal proposal, int voterId) {
+    int slot = slotOf(proposal);
+    if (slot < 0) {
+      slot = addSlot(proposal);
+    }
+    if (voters[slot].get(voterId)) {
+      // A duplicate vote.
+      return false;
+    }
+    voters[slot].set(voterId);
+    ++voteCount;
+    if (++counts[slot] == quorumSize) {
+      quorumProposals.add(proposal);
+      return true;
+    }
+    return false;
+  }
+
+  /** The number of votes counted, for any proposal. */
+  int getVoteCount() {
+    return voteCount;
+  }
+
+  int getCount(Proposal proposal) {
+    int slot = slotOf(proposal);
+    return slot < 0 ? 0 : counts[slot];
+  }
+
+  boolean hasQuorum() {
+    return !quorumProposals.isEmpty();
+  }
+
+  boolean hasQuorum(Proposal proposal) {
+    return getCount(proposal) >= quorumSize;
+  }
+
+  /** A read-only view of the proposals which have a quorum, in the order they reached it. */
+  List<Proposal> getQuorumProposals() {
+    return quorumProposalsView;
+  }
+
+  /**
+   * Whether a proposal other than nil could still reach a quorum for the first time, if each of
+   * {@code voterCount} voters votes once in this tally. Once it can't, no vote still to arrive can
+   * change which proposals have a quorum, except perhaps nil.
+   */
+  boolean couldReachQuorum(int voterCount) {
+    return couldReachQuorum(voterCount, false);
+  }
+
+  /** Like {@link #couldReachQuorum(int)}, but for any proposal, including nil. */
+  boolean couldAnyReachQuorum(int voterCount) {
+    return couldReachQuorum(voterCount, true);
+  }
+
+  private boolean couldReachQuorum(int voterCount, boolean includingNil) {
+    int remaining = voterCount - voteCount;
+    if (remaining >= quorumSize) {
+      return true;
+    }
+    for (int i = 0; i < proposalCount; ++i) {
+      if ((includingNil || proposals[i] != null) && counts[i] < quorumSize
+          && counts[i] + remaining >= quorumSize) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int slotOf(Proposal proposal) {
+    for (int i = 0; i < proposalCount; ++i) {
+      if (proposals[i] == proposal) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int addSlot(Proposal proposal) {
+    if (proposalCount == proposals.length) {
+      proposals = Arrays.copyOf(proposals, 2 * proposalCount);
+      counts = Arrays.copyOf(counts, 2 * proposalCount);
+      voters = Arrays.copyOf(voters, 2 * proposalCount);
+    }
+    proposals[proposalCount] = proposal;
+    voters[proposalCount] = new BitSet();
+    return proposalCount++;
+  }
+}
@@ -0,0 +1,50 @@
+import java.util.SplittableRandom;
+
+/**
+ * A stream of random numbers used by the simulator. Streams aren't thread-safe, since each belongs
+ * to a single run, or to a single source within a run, so they can use a fast generator without
+ * any synchronization.
+ *
+ * <p>Streams form a seed tree: each is seeded by deriving a seed from its parent's and a key, as
+ * with {@link Util#deriveSeed}, so any stream can be recreated without drawing from the others.
+ */
+interface RandomStream {
+  /** A stream seeded with {@code seed}. */
+  static RandomStream create(long seed) {
+    return new SplittableRandomStream(seed);
+  }
+
+  /** The stream below {@code seed} in the seed tree, reached through {@code keys}. */
+  static RandomStream derive(long seed, long... keys) {
+    return create(Util.deriveSeed(seed, keys));
+  }
+
+  /** A uniformly distributed double in [0, 1). */
+  double nextDouble();
+
+  long nextLong();
+
+  /** A uniformly distributed int in [0, bound). */
+  int nextInt(int bound);
+}
+
+/** A stream backed by {@link SplittableRandom}, a SplitMix generator with no shared state. */
+class SplittableRandomStream implements RandomStream {
+  private final SplittableRandom random;
+
+  SplittableRandomStream(long seed) {
+    this.random = new SplittableRandom(seed);
+  }
+
+  @Override public double nextDouble() {
+    return random.nextDouble();
+  }
+
+  @Override public long nextLong() {
+    return random.nextLong();
+  }
+
+  @Override public int nextInt(int bound) {
+    return random.nextInt(bound);
+  }
+}
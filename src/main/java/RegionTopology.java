@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Places nodes in cloud datacenter regions, as real validator sets are, rather than uniformly over
+ * the sphere. Each node is placed in a region chosen with probability proportional to its weight.
+ * The latency between regions is either measured, from a matrix of round-trip times, or the
+ * best-case latency between their datacenters. Each node also has its own access latency within
+ * its region, drawn uniformly up to a maximum, which separates nodes in the same region.
+ *
+ * <p>A topology is created once, including reading any matrix, and shared by every scenario of a
+ * sweep.
+ */
+class RegionTopology {
+  /** Known regions and the approximate locations of their datacenters, by name. */
+  private static final Map<String, EarthPosition> CATALOGUE = new LinkedHashMap<>();
+
+  static {
+    CATALOGUE.put("us-east-1", EarthPosition.fromDegrees(38.9, -77.4));
+    CATALOGUE.put("us-east-2", EarthPosition.fromDegrees(40.0, -83.0));
+    CATALOGUE.put("us-west-1", EarthPosition.fromDegrees(37.4, -121.9));
+    CATALOGUE.put("us-west-2", EarthPosition.fromDegrees(45.8, -119.7));
+    CATALOGUE.put("ca-central-1", EarthPosition.fromDegrees(45.5, -73.6));
+    CATALOGUE.put("sa-east-1", EarthPosition.fromDegrees(-23.5, -46.6));
+    CATALOGUE.put("eu-west-1", EarthPosition.fromDegrees(53.3, -6.3));
+    CATALOGUE.put("eu-west-2", EarthPosition.fromDegrees(51.5, -0.1));
+    CATALOGUE.put("eu-central-1", EarthPosition.fromDegrees(50.1, 8.7));
+    CATALOGUE.put("eu-north-1", EarthPosition.fromDegrees(59.3, 18.1));
+    CATALOGUE.put("af-south-1", EarthPosition.fromDegrees(-33.9, 18.4));
+    CATALOGUE.put("ap-south-1", EarthPosition.fromDegrees(19.1, 72.9));
+    CATALOGUE.put("ap-southeast-1", EarthPosition.fromDegrees(1.3, 103.8));
+    CATALOGUE.put("ap-southeast-2", EarthPosition.fromDegrees(-33.9, 151.2));
+    CATALOGUE.put("ap-northeast-1", EarthPosition.fromDegrees(35.7, 139.7));
+    CATALOGUE.put("ap-northeast-2", EarthPosition.fromDegrees(37.6, 127.0));
+  }
+
+  /** The datacenter of each region, indexed by region. */
+  private final List<EarthPosition> sites;
+  /** The cumulative weights of the regions, normalized so that the last is 1. */
+  private final double[] cumulativeWeights;
+  /** The one-way latency between each pair of regions, in seconds, indexed by both. */
+  private final double[][] latencies;
+  private final double maxAccessLatency;
+
+  private RegionTopology(List<String> names, List<EarthPosition> sites, double[] weights,
+      double[][] latencies, double maxAccessLatency) {
+    this.sites = sites;
+    this.cumulativeWeights = new double[weights.length];
+    double total = Arrays.stream(weights).sum();
+    double sum = 0;
+    for (int i = 0; i < weights.length; ++i) {
+      if (!(weights[i] >= 0)) {
+        throw new IllegalArgumentException("Negative weight for region " + names.get(i));
+      }
+      sum += weights[i];
+      cumulativeWeights[i] = sum / total;
+    }
+    this.latencies = latencies;
+    this.maxAccessLatency = maxAccessLatency;
+  }
+
+  /**
+   * Create a topology of the given regions, whose latencies are those between their datacenters.
+   *
+   * @param weights the relative weight of each region, by name, in order, or null for every known
+   *     region with equal weights
+   * @param maxAccessLatency the maximum latency between a node and its region's datacenter, in
+   *     seconds
+   */
+  static RegionTopology create(Map<String, Double> weights, double maxAccessLatency) {
+    if (weights == null) {
+      weights = equalWeights(new ArrayList<>(CATALOGUE.keySet()));
+    }
+    List<String> names = new ArrayList<>(weights.keySet());
+    List<EarthPosition> sites = locateSites(names, CATALOGUE);
+    double[][] latencies = new double[names.size()][names.size()];
+    for (int i = 0; i < names.size(); ++i) {
+      for (int j = 0; j < names.size(); ++j) {
+        latencies[i][j] = sites.get(i).getLatency(sites.get(j));
+      }
+    }
+    return new RegionTopology(Collections.unmodifiableList(names), sites,
+        toArray(weights, names), latencies, maxAccessLatency);
+  }
+
+  /**
+   * Create a topology whose latencies between regions are read from a CSV file of measured round
+   * trip times, in milliseconds. Its header row names the regions, after an empty first column,
+   * and each following row gives a region's name and its round trip time to each region in the
+   * header, including itself. The one-way latency is half the mean of the two directions' times.
+   *
+   * <p>Regions which aren't in the catalogue, such as those of other providers or private
+   * datacenters, need a location, which is given in the columns headed {@code latitude} and {@code
+   * longitude}, in degrees. These may be left empty for known regions.
+   *
+   * @param weights as in {@link #create}, or null for every region in the file with equal weights
+   */
+  static RegionTopology load(Path rttMatrix, Map<String, Double> weights,
+      double maxAccessLatency) throws IOException {
+    List<String> lines = Files.readAllLines(rttMatrix, StandardCharsets.UTF_8);
+    String[] header = lines.get(0).split(",", -1);
+    List<String> columns = new ArrayList<>();
+    for (int c = 1; c < header.length; ++c) {
+      columns.add(header[c].trim());
+    }
+    int latitudeColumn = columns.indexOf("latitude");
+    int longitudeColumn = columns.indexOf("longitude");
+    if ((latitudeColumn < 0) != (longitudeColumn < 0)) {
+      throw new IllegalArgumentException("Need both a latitude and a longitude column");
+    }
+    Map<String, EarthPosition> knownSites = new LinkedHashMap<>(CATALOGUE);
+    Map<String, double[]> rows = new LinkedHashMap<>();
+    for (String line : lines.subList(1, lines.size())) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = line.split(",", -1);
+      if (fields.length != header.length) {
+        throw new IllegalArgumentException("Expected " + header.length + " fields: " + line);
+      }
+      String name = fields[0].trim();
+      double[] rtts = new double[columns.size()];
+      for (int c = 0; c < rtts.length; ++c) {
+        if (c == latitudeColumn || c == longitudeColumn) {
+          continue;
+        }
+        rtts[c] = Double.parseDouble(fields[c + 1].trim()) / 1000;
+      }
+      rows.put(name, rtts);
+      if (latitudeColumn >= 0 && !fields[latitudeColumn + 1].trim().isEmpty()) {
+        knownSites.put(name, EarthPosition.fromDegrees(
+            Double.parseDouble(fields[latitudeColumn + 1].trim()),
+            Double.parseDouble(fields[longitudeColumn + 1].trim())));
+      }
+    }
+
+    if (weights == null) {
+      weights = equalWeights(new ArrayList<>(rows.keySet()));
+    }
+    List<String> names = new ArrayList<>(weights.keySet());
+    List<EarthPosition> sites = locateSites(names, knownSites);
+    double[][] latencies = new double[names.size()][names.size()];
+    for (int i = 0; i < names.size(); ++i) {
+      for (int j = 0; j < names.size(); ++j) {
+        latencies[i][j] = (getRtt(rows, columns, names.get(i), names.get(j))
+            + getRtt(rows, columns, names.get(j), names.get(i))) / 4;
+      }
+    }
+    return new RegionTopology(Collections.unmodifiableList(names), sites,
+        toArray(weights, names), latencies, maxAccessLatency);
+  }
+
+  /** Place a node in a random region, with a random access latency. */
+  EarthPosition randomPosition(RandomStream random) {
+    double u = random.nextDouble();
+    int region = 0;
+    while (region < cumulativeWeights.length - 1 && cumulativeWeights[region] <= u) {
+      ++region;
+    }
+    return new RegionPosition(this, region, random.nextDouble() * maxAccessLatency);
+  }
+
+  /** The datacenter of each named region, which must be among {@code knownSites}. */
+  private static List<EarthPosition> locateSites(List<String> names,
+      Map<String, EarthPosition> knownSites) {
+    List<EarthPosition> sites = new ArrayList<>(names.size());
+    for (String name : names) {
+      EarthPosition site = knownSites.get(name);
+      if (site == null) {
+        throw new IllegalArgumentException("No location for region " + name
+            + "; known regions are " + knownSites.keySet());
+      }
+      sites.add(site);
+    }
+    return Collections.unmodifiableList(sites);
+  }
+
+  private static double getRtt(Map<String, double[]> rows, List<String> columns, String from,
+      String to) {
+    double[] row = rows.get(from);
+    int column = columns.indexOf(to);
+    if (row == null || column < 0) {
+      throw new IllegalArgumentException("No round trip time from " + from + " to " + to);
+    }
+    return row[column];
+  }
+
+  private static Map<String, Double> equalWeights(List<String> names) {
+    Map<String, Double> weights = new LinkedHashMap<>();
+    for (String name : names) {
+      weights.put(name, 1.0);
+    }
+    return weights;
+  }
+
+  private static double[] toArray(Map<String, Double> weights, List<String> names) {
+    return names.stream().mapToDouble(weights::get).toArray();
+  }
+
+  /**
+   * The position of a node in a region: the same place as the region's datacenter, but with the
+   * latency between regions and the node's own access latency.
+   */
+  static class RegionPosition extends EarthPosition {
+    private final RegionTopology topology;
+    private final int region;
+    private final double accessLatency;
+
+    private RegionPosition(RegionTopology topology, int region, double accessLatency) {
+      super(topology.sites.get(region));
+      this.topology = topology;
+      this.region = region;
+      this.accessLatency = accessLatency;
+    }
+
+    @Override double getLatency(EarthPosition that) {
+      if (that == this) {
+        return 0;
+      }
+      if (!(that instanceof RegionPosition) || ((RegionPosition) that).topology != topology) {
+        return super.getLatency(that);
+      }
+      RegionPosition other = (RegionPosition) that;
+      return topology.latencies[region][other.region] + accessLatency + other.accessLatency;
+    }
+  }
+}
@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The responsive version of Tendermint, run by {@link CorrectTendermintNode}. */
+public class ResponsiveTendermintProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "responsive-tendermint";
+  }
+
+  @Override public String getDisplayName() {
+    return "Responsive Tendermint";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectTendermintNode(position, initialTimeout, true);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("cycles_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("cycles_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectTendermintNode) node).getCycleCount()));
+  }
+}
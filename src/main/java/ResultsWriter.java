@@ -0,0 +1,123 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes rows of results as they're produced, either as CSV or as JSON Lines, so that nothing
+ * needs to be held in memory until the end of a sweep. Each row is flushed once written, so partial
+ * results survive an interrupted sweep.
+ */
+class ResultsWriter implements Closeable {
+  enum Format {
+    CSV, JSON_LINES
+  }
+
+  private final Writer writer;
+  private final Format format;
+  private final List<String> columns;
+
+  ResultsWriter(Writer writer, Format format, List<String> columns) {
+    this.writer = writer;
+    this.format = format;
+    this.columns = columns;
+    if (format == Format.CSV) {
+      writeLine(String.join(",", columns));
+    }
+  }
+
+  /** Open a file for writing, choosing JSON Lines for .json or .jsonl files and CSV otherwise. */
+  static ResultsWriter open(Path path, List<String> columns) throws IOException {
+    String name = path.getFileName().toString();
+    Format format = name.endsWith(".json") || name.endsWith(".jsonl")
+        ? Format.JSON_LINES : Format.CSV;
+    BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    return new ResultsWriter(writer, format, columns);
+  }
+
+  /**
+   * Write a row with one value per column. Numbers are written as numbers, NaN and null as empty
+   * (or null, in JSON), and anything else as a string.
+   */
+  void writeRow(Object... values) {
+    if (values.length != columns.size()) {
+      throw new IllegalArgumentException(
+          "Expected " + columns.size() + " values, got " + values.length);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    if (format == Format.JSON_LINES) {
+      sb.append('{');
+    }
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      if (format == Format.JSON_LINES) {
+        appendJsonString(sb, columns.get(i));
+        sb.append(':');
+      }
+      appendValue(sb, values[i]);
+    }
+    if (format == Format.JSON_LINES) {
+      sb.append('}');
+    }
+    writeLine(sb.toString());
+  }
+
+  @Override public void close() throws IOException {
+    writer.close();
+  }
+
+  private void appendValue(StringBuilder sb, Object value) {
+    boolean missing = value == null
+        || value instanceof Double && !Double.isFinite((Double) value);
+    if (missing) {
+      sb.append(format == Format.JSON_LINES ? "null" : "");
+    } else if (value instanceof Number || value instanceof Boolean) {
+      sb.append(value);
+    } else if (format == Format.JSON_LINES) {
+      appendJsonString(sb, value.toString());
+    } else {
+      appendCsvString(sb, value.toString());
+    }
+  }
+
+  private static void appendJsonString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  private static void appendCsvString(StringBuilder sb, String s) {
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+      sb.append(s);
+    } else {
+      sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+    }
+  }
+
+  private void writeLine(String line) {
+    try {
+      writer.write(line);
+      writer.write('\n');
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The randomly generated setting of a run: where nodes are placed, which of them fail, their order
+ * (which determines leaders), and the seed of the latency jitter, the workload and any overlay. A
+ * scenario can be replayed identically for each protocol, so that protocols are compared on the
+ * same topologies with common random numbers, and their differences can be measured per scenario.
+ *
+ * <p>Each of these is drawn from its own stream below the scenario's seed in the seed tree, so
+ * that, for example, changing how positions are drawn doesn't change the jitter.
+ */
+class Scenario {
+  /** The keys of the streams below a scenario's seed. */
+  private static final long POSITIONS = 0, SHUFFLE = 1, JITTER = 2, WORKLOAD = 3, OVERLAY = 4;
+
+  private final List<EarthPosition> positions;
+  /** Whether the node at each index has failed. */
+  private final boolean[] failed;
+  private final long seed;
+
+  private Scenario(List<EarthPosition> positions, boolean[] failed, long seed) {
+    this.positions = positions;
+    this.failed = failed;
+    this.seed = seed;
+  }
+
+  /**
+   * Generate a scenario, drawing positions for the correct nodes and then the failed nodes, and
+   * then shuffling them together, as the protocol runs always have.
+   */
+  static Scenario generate(long seed, int correctNodeCount, int failedNodeCount) {
+    return generate(seed, correctNodeCount, failedNodeCount, null);
+  }
+
+  /**
+   * Generate a scenario as above, but placing nodes in the regions of {@code regions}, or uniformly
+   * over the sphere if it's null.
+   */
+  static Scenario generate(long seed, int correctNodeCount, int failedNodeCount,
+      RegionTopology regions) {
+    RandomStream positionRandom = RandomStream.derive(seed, POSITIONS);
+    List<Integer> order = new ArrayList<>();
+    List<EarthPosition> unshuffledPositions = new ArrayList<>();
+    for (int i = 0; i < correctNodeCount + failedNodeCount; ++i) {
+      order.add(i);
+      unshuffledPositions.add(regions == null ? EarthPosition.randomPosition(positionRandom)
+          : regions.randomPosition(positionRandom));
+    }
+    Util.shuffle(order, RandomStream.derive(seed, SHUFFLE));
+
+    List<EarthPosition> positions = new ArrayList<>(order.size());
+    boolean[] failed = new boolean[order.size()];
+    for (int i = 0; i < order.size(); ++i) {
+      positions.add(unshuffledPositions.get(order.get(i)));
+      failed[i] = order.get(i) >= correctNodeCount;
+    }
+    return new Scenario(Collections.unmodifiableList(positions), failed, seed);
+  }
+
+  int getNodeCount() {
+    return positions.size();
+  }
+
+  /**
+   * Create the nodes of this scenario, in order, using {@code correctNodeFactory} to create each
+   * correct node at its position.
+   */
+  List<Node> createNodes(Function<EarthPosition, Node> correctNodeFactory) {
+    List<Node> nodes = new ArrayList<>(positions.size());
+    for (int i = 0; i < positions.size(); ++i) {
+      EarthPosition position = positions.get(i);
+      nodes.add(failed[i] ? new FailedNode(position) : correctNodeFactory.apply(position));
+    }
+    return nodes;
+  }
+
+  /**
+   * Create a fully connected network of the given nodes. Each source draws its jitter from its own
+   * stream seeded by this scenario, so the k-th broadcast from a node sees the same delays under
+   * every protocol.
+   *
+   * @param latencyMatrixCache a cache for base latencies, which hits whenever this scenario is
+   *     replayed, or null
+   */
+  Network createNetwork(List<Node> nodes, LatencyMatrix.Cache latencyMatrixCache) {
+    return createNetwork(nodes, latencyMatrixCache, NetworkModel.DEFAULT);
+  }
+
+  /**
+   * Create a network of the given nodes as {@code model} describes, with this scenario's jitter
+   * and, if it has an overlay, this scenario's peers.
+   */
+  Network createNetwork(List<Node> nodes, LatencyMatrix.Cache latencyMatrixCache,
+      NetworkModel model) {
+    return model.create(nodes, RandomStream.derive(seed, JITTER),
+        RandomStream.derive(seed, OVERLAY), latencyMatrixCache);
+  }
+
+  /**
+   * Generate the transactions of a run up to {@code horizon}, which are the same under every
+   * protocol, and give each correct node a mempool for them.
+   */
+  Workload createWorkload(Workload.Spec spec, Network network, List<Node> correctNodes,
+      double horizon) {
+    Workload workload =
+        spec.generate(RandomStream.derive(seed, WORKLOAD), network, correctNodes, horizon);
+    for (Node node : correctNodes) {
+      node.setMempool(workload.createMempool(node));
+    }
+    return workload;
+  }
+}
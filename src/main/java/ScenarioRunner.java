@@ -0,0 +1,165 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/** Runs any {@link ConsensusProtocol} in a {@link Scenario}, until every correct node decides. */
+class ScenarioRunner {
+  private final double timeLimit;
+  private final LatencyMatrix.Cache latencyMatrixCache;
+  private final HeightSchedule heightSchedule;
+  private final Workload.Spec workloadSpec;
+  private final NetworkModel networkModel;
+  private final EventQueueType eventQueueType;
+  private final int partitions;
+
+  ScenarioRunner(double timeLimit, LatencyMatrix.Cache latencyMatrixCache) {
+    this(timeLimit, latencyMatrixCache, HeightSchedule.SINGLE, null);
+  }
+
+  ScenarioRunner(double timeLimit, LatencyMatrix.Cache latencyMatrixCache,
+      HeightSchedule heightSchedule, Workload.Spec workloadSpec) {
+    this(timeLimit, latencyMatrixCache, heightSchedule, workloadSpec, NetworkModel.DEFAULT);
+  }
+
+  /**
+   * @param timeLimit the simulated time after which a run deciding a single height is abandoned as
+   *     incomplete, which is scaled for runs deciding more
+   * @param latencyMatrixCache a cache for base latencies, which is worth sharing when scenarios are
+   *     replayed, or null
+   * @param heightSchedule how many heights each correct node decides
+   * @param workloadSpec how to generate the client transactions of each run, or null to propose
+   *     empty blocks
+   * @param networkModel how to build the network of each run
+   */
+  ScenarioRunner(double timeLimit, LatencyMatrix.Cache latencyMatrixCache,
+      HeightSchedule heightSchedule, Workload.Spec workloadSpec, NetworkModel networkModel) {
+    this(timeLimit, latencyMatrixCache, heightSchedule, workloadSpec, networkModel,
+        EventQueueType.HEAP, 1);
+  }
+
+  /**
+   * @param eventQueueType the event queue of each simulation, or of each of its partitions, whose
+   *     time resolution it also runs at
+   * @param partitions the number of partitions of nodes to run each simulation in, in parallel,
+   *     which doesn't change results. Runs whose network doesn't have independent sources, such as
+   *     one with limited capacity, are simulated sequentially.
+   */
+  ScenarioRunner(double timeLimit, LatencyMatrix.Cache latencyMatrixCache,
+      HeightSchedule heightSchedule, Workload.Spec workloadSpec, NetworkModel networkModel,
+      EventQueueType eventQueueType, int partitions) {
+    if (partitions < 1) {
+      throw new IllegalArgumentException("Need at least one partition");
+    }
+    this.timeLimit = heightSchedule.scaleTimeLimit(timeLimit);
+    this.latencyMatrixCache = latencyMatrixCache;
+    this.heightSchedule = heightSchedule;
+    this.workloadSpec = workloadSpec;
+    this.networkModel = networkModel;
+    this.eventQueueType = eventQueueType;
+    this.partitions = partitions;
+  }
+
+  /** The simulated time after which a run is abandoned as incomplete. */
+  double getTimeLimit() {
+    return timeLimit;
+  }
+
+  /** Run a single simulation, returning its result if every correct node terminated in time. */
+  Optional<Result> run(ConsensusProtocol protocol, Scenario scenario, double initialTimeout) {
+    List<Node> nodes = scenario.createNodes(position -> {
+      Node node = protocol.createCorrectNode(position, initialTimeout);
+      node.setHeightSchedule(heightSchedule);
+      return node;
+    });
+    Network network = scenario.createNetwork(nodes, latencyMatrixCache, networkModel);
+    List<Node> correctNodes = nodes.stream()
+        .filter(protocol::isCorrect)
+        .collect(Collectors.toList());
+    Workload workload = workloadSpec == null ? null
+        : scenario.createWorkload(workloadSpec, network, correctNodes, timeLimit);
+    TimeResolution timeResolution = eventQueueType.getTimeResolution();
+    Simulation simulation = partitions > 1 && network.hasIndependentSources()
+        ? new Simulation(network, eventQueueType::create, timeResolution, BroadcastMode.LAZY,
+            partitions)
+        : new Simulation(network, eventQueueType.create(), timeResolution, BroadcastMode.LAZY);
+    if (!simulation.run(timeLimit, StopCondition.allCorrectNodesTerminated())) {
+      return Optional.empty();
+    }
+
+    if (!correctNodes.stream().allMatch(Node::hasTerminated)) {
+      System.out.printf("WARNING: Not all %s nodes terminated.\n", protocol.getDisplayName());
+      return Optional.empty();
+    }
+
+    double[] terminationTimes = correctNodes.stream()
+        .mapToDouble(Node::getTerminationTime)
+        .toArray();
+    Map<String, Double> metrics = new HashMap<>();
+    protocol.recordMetrics(simulation, correctNodes, metrics);
+    return Optional.of(new Result(terminationTimes, simulation.getSentMessageCount(),
+        simulation.getSentByteCount(), Throughput.measure(correctNodes), workload, metrics));
+  }
+
+  /** The outcome of a completed run. */
+  static class Result {
+    private final double[] terminationTimes;
+    private final long sentMessageCount;
+    private final long sentByteCount;
+    private final Throughput throughput;
+    private final double[] transactionLatencies;
+    private final double transactionThroughput;
+    private final Map<String, Double> metrics;
+
+    private Result(double[] terminationTimes, long sentMessageCount, long sentByteCount,
+        Throughput throughput, Workload workload, Map<String, Double> metrics) {
+      this.terminationTimes = terminationTimes;
+      this.sentMessageCount = sentMessageCount;
+      this.sentByteCount = sentByteCount;
+      this.throughput = throughput;
+      this.transactionLatencies = workload == null ? new double[0] : workload.getCommitLatencies();
+      this.transactionThroughput = workload == null ? 0 : workload.getThroughput();
+      this.metrics = Collections.unmodifiableMap(metrics);
+    }
+
+    /** The termination time of each correct node, i.e. when it decided its last height. */
+    double[] getTerminationTimes() {
+      return terminationTimes;
+    }
+
+    /** The number of messages sent between distinct nodes, until every correct node decided. */
+    long getSentMessageCount() {
+      return sentMessageCount;
+    }
+
+    /** The total size of those messages, in bytes. */
+    long getSentByteCount() {
+      return sentByteCount;
+    }
+
+    /** The sustained performance of the run, which is of interest if it decided many heights. */
+    Throughput getThroughput() {
+      return throughput;
+    }
+
+    /**
+     * The commit latency of each committed transaction, from its submission until its origin node
+     * committed it. There are none if the run has no workload.
+     */
+    double[] getTransactionLatencies() {
+      return transactionLatencies;
+    }
+
+    /** The number of transactions committed per second. */
+    double getTransactionThroughput() {
+      return transactionThroughput;
+    }
+
+    /** Any protocol-specific metrics, by name. */
+    Map<String, Double> getMetrics() {
+      return metrics;
+    }
+  }
+}
@@ -1,21 +1,184 @@
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
 
+/**
+ * Runs a discrete-event simulation of a network of nodes.
+ *
+ * <p>A simulation may be split into partitions, each owning a disjoint set of nodes along with the
+ * events whose subjects they are. Partitions are run in parallel using conservative time windows:
+ * a message between nodes in different partitions takes at least the network's minimum latency
+ * (the lookahead), so within a window shorter than that, no partition can affect another. Messages
+ * between partitions are held in outboxes until the barrier at the end of each window.
+ *
+ * <p>Events are ordered by time, then by sequence numbers which are counted per source node rather
+ * than globally, so the order doesn't depend on how partitions interleave. Together with a network
+ * whose sources draw latencies independently, this makes parallel results identical to sequential
+ * ones.
+ */
 class Simulation {
   private final Network network;
-  private final TreeSet<Event> eventsByTime = new TreeSet<>();
+  private final TimeResolution timeResolution;
+  private final BroadcastMode broadcastMode;
+  private final Partition[] partitions;
+  /** The index of each node's partition, indexed by node ID. */
+  private final int[] partitionIndices;
+  /** A lower bound on the latency of any message between nodes in different partitions. */
+  private final double lookahead;
+  /** The pending timer of each node, indexed by node ID, or null if there is none. */
+  private final TimerEvent[] timers;
+  /** The number of events scheduled by each node so far, indexed by node ID. */
+  private final long[] scheduledEventCounts;
+  private final int correctNodeCount;
 
   Simulation(Network network) {
+    this(network, new HeapEventQueue(), TimeResolution.EXACT, BroadcastMode.LAZY);
+  }
+
+  Simulation(Network network, EventQueue eventQueue, TimeResolution timeResolution,
+      BroadcastMode broadcastMode) {
+    this(network, new EventQueue[] {eventQueue}, new int[network.getNodes().size()],
+        timeResolution, broadcastMode);
+  }
+
+  /**
+   * Create a simulation which runs {@code parallelism} partitions of nodes in parallel. Nodes are
+   * partitioned into bands of longitude, which keeps most nearby pairs, and all co-located ones, in
+   * the same partition. The network must have independent sources. If some message between
+   * partitions may still take no time, there's no lookahead, and events are processed one at a
+   * time, in the same order as in a sequential simulation.
+   *
+   * @param eventQueues a supplier of an event queue for each partition
+   */
+  Simulation(Network network, Supplier<EventQueue> eventQueues, TimeResolution timeResolution,
+      BroadcastMode broadcastMode, int parallelism) {
+    this(network, newEventQueues(eventQueues, partitionCount(network, parallelism)),
+        partitionByLongitude(network.getNodes(), partitionCount(network, parallelism)),
+        timeResolution, broadcastMode);
+    if (partitions.length > 1 && !network.hasIndependentSources()) {
+      throw new IllegalArgumentException("Parallel simulation requires independent sources");
+    }
+  }
+
+  private Simulation(Network network, EventQueue[] eventQueues, int[] partitionIndices,
+      TimeResolution timeResolution, BroadcastMode broadcastMode) {
+    List<Node> nodes = network.getNodes();
     this.network = network;
+    this.timeResolution = timeResolution;
+    this.broadcastMode = broadcastMode;
+    this.partitions = new Partition[eventQueues.length];
+    for (int i = 0; i < partitions.length; ++i) {
+      partitions[i] = new Partition(eventQueues[i], partitions.length);
+    }
+    this.partitionIndices = partitionIndices;
+    this.lookahead = partitions.length > 1
+        ? computeLookahead(network, partitionIndices) : Double.POSITIVE_INFINITY;
+    this.timers = new TimerEvent[nodes.size()];
+    this.scheduledEventCounts = new long[nodes.size()];
+    this.correctNodeCount = (int) nodes.stream()
+        .filter(node -> !(node instanceof FailedNode))
+        .count();
   }
 
   void broadcast(Node source, Message message, double time) {
-    for (Node destination : network.getNodes()) {
-      double latency = network.getLatency(source, destination);
-      double arrivalTime = time + latency;
-      eventsByTime.add(new MessageEvent(arrivalTime, destination, message));
+    List<Node> nodes = network.getNodes();
+    Partition sourcePartition = getPartition(source);
+    long messageCount = network.getBroadcastMessageCount();
+    sourcePartition.sentMessageCount += messageCount;
+    sourcePartition.sentByteCount += messageCount * message.getSizeBytes();
+    if (broadcastMode == BroadcastMode.EAGER) {
+      for (Node destination : nodes) {
+        double arrivalTime = network.getArrivalTime(source, destination, message, time);
+        scheduleEvent(new MessageEvent(arrivalTime, destination, message), source);
+      }
+      return;
+    }
+
+    Node[] destinations = new Node[nodes.size()];
+    double[] arrivalTimes = new double[nodes.size()];
+    int count = 0;
+    for (Node destination : nodes) {
+      // Draw a latency even for skipped destinations, so that both modes consume the same random
+      // numbers and give identical results.
+      double arrivalTime = network.getArrivalTime(source, destination, message, time);
+      // Nodes in other partitions may be running concurrently, so whether they've terminated is
+      // only checked upon delivery.
+      if (destination instanceof FailedNode
+          || getPartition(destination) == sourcePartition && destination.hasTerminated()) {
+        continue;
+      }
+      destinations[count] = destination;
+      arrivalTimes[count] = arrivalTime;
+      ++count;
+    }
+    if (count == 0) {
+      return;
+    }
+
+    // Sort by arrival time. The sort is stable, so simultaneous deliveries keep the same order as
+    // in eager mode.
+    int[] order = Util.sortedIndices(arrivalTimes, count);
+    if (partitions.length == 1) {
+      Node[] sortedDestinations = new Node[count];
+      double[] sortedArrivalTimes = new double[count];
+      for (int i = 0; i < count; ++i) {
+        sortedDestinations[i] = destinations[order[i]];
+        sortedArrivalTimes[i] = arrivalTimes[order[i]];
+      }
+      scheduleEvent(new BroadcastEvent(source, message, sortedDestinations, sortedArrivalTimes),
+          source);
+      return;
+    }
+
+    // Split the deliveries by destination partition. The parts share a sequence number, so each
+    // delivery is ordered exactly as it would be within a single broadcast event.
+    int[] partCounts = new int[partitions.length];
+    for (int i = 0; i < count; ++i) {
+      ++partCounts[partitionIndices[destinations[i].getId()]];
+    }
+    Node[][] partDestinations = new Node[partitions.length][];
+    double[][] partArrivalTimes = new double[partitions.length][];
+    for (int p = 0; p < partitions.length; ++p) {
+      partDestinations[p] = new Node[partCounts[p]];
+      partArrivalTimes[p] = new double[partCounts[p]];
+      partCounts[p] = 0;
+    }
+    for (int i = 0; i < count; ++i) {
+      Node destination = destinations[order[i]];
+      int p = partitionIndices[destination.getId()];
+      partDestinations[p][partCounts[p]] = destination;
+      partArrivalTimes[p][partCounts[p]] = arrivalTimes[order[i]];
+      ++partCounts[p];
+    }
+    long sequence = nextSequence(source);
+    for (int p = 0; p < partitions.length; ++p) {
+      if (partCounts[p] > 0) {
+        BroadcastEvent part =
+            new BroadcastEvent(source, message, partDestinations[p], partArrivalTimes[p]);
+        part.setOrder(timeResolution.toKey(part.getTime()), sequence);
+        sourcePartition.send(part);
+      }
     }
   }
 
+  /** Send a message from {@code source} to a single destination, such as a leader. */
+  void send(Node source, Node destination, Message message, double time) {
+    Partition sourcePartition = getPartition(source);
+    int hopCount = network.getHopCount(source, destination);
+    sourcePartition.sentMessageCount += hopCount;
+    sourcePartition.sentByteCount += (long) hopCount * message.getSizeBytes();
+    // As in a broadcast, the latency is drawn even if the destination will ignore the message.
+    // Whether the destination has terminated is only checked upon delivery, since skipping the
+    // event here would shift the source's sequence numbers differently in parallel simulations.
+    double arrivalTime = network.getArrivalTime(source, destination, message, time);
+    if (destination instanceof FailedNode) {
+      return;
+    }
+    scheduleEvent(new MessageEvent(arrivalTime, destination, message), source);
+  }
+
   Network getNetwork() {
     return network;
   }
@@ -24,8 +187,97 @@ class Simulation {
     return network.getLeader(index);
   }
 
-  void scheduleEvent(Event event) {
-    eventsByTime.add(event);
+  /**
+   * Set the timer of {@code node} to fire at {@code time}. Each node has a single timer, so any
+   * pending timer is cancelled and removed from the queue.
+   */
+  void setTimer(Node node, double time) {
+    cancelTimer(node);
+    TimerEvent timer = new TimerEvent(time, node);
+    timers[node.getId()] = timer;
+    scheduleEvent(timer, node);
+  }
+
+  /** Cancel the pending timer of {@code node}, if there is one. */
+  void cancelTimer(Node node) {
+    TimerEvent timer = timers[node.getId()];
+    if (timer != null) {
+      Partition partition = getPartition(node);
+      partition.eventQueue.remove(timer);
+      timers[node.getId()] = null;
+      --partition.pendingEventCount;
+    }
+  }
+
+  /** Schedule an event on behalf of {@code source}, the node whose action caused it. */
+  void scheduleEvent(Event event, Node source) {
+    event.setOrder(timeResolution.toKey(event.getTime()), nextSequence(source));
+    getPartition(source).send(event);
+  }
+
+  int getCorrectNodeCount() {
+    return correctNodeCount;
+  }
+
+  /**
+   * The number of correct nodes which have terminated. While a parallel simulation is running, this
+   * is only up to date between windows, which is when stop conditions are checked.
+   */
+  int getTerminatedCorrectNodeCount() {
+    int count = 0;
+    for (Partition partition : partitions) {
+      count += partition.terminatedCorrectNodeCount;
+    }
+    return count;
+  }
+
+  /** The number of events processed so far, counting each broadcast delivery separately. */
+  long getProcessedEventCount() {
+    long count = 0;
+    for (Partition partition : partitions) {
+      count += partition.processedEventCount;
+    }
+    return count;
+  }
+
+  /**
+   * The number of messages sent so far between distinct nodes, counting each destination of a
+   * broadcast separately, and each hop relayed through an overlay, whether or not the message was
+   * delivered.
+   */
+  long getSentMessageCount() {
+    long count = 0;
+    for (Partition partition : partitions) {
+      count += partition.sentMessageCount;
+    }
+    return count;
+  }
+
+  /** The total size of the messages counted by {@link #getSentMessageCount()}, in bytes. */
+  long getSentByteCount() {
+    long count = 0;
+    for (Partition partition : partitions) {
+      count += partition.sentByteCount;
+    }
+    return count;
+  }
+
+  /**
+   * The number of events which were still pending when the last run stopped, counting each
+   * broadcast delivery separately. These were skipped, either because the stop condition was met or
+   * because they were past the time limit.
+   */
+  long getSkippedEventCount() {
+    long count = 0;
+    for (Partition partition : partitions) {
+      count += partition.pendingEventCount;
+      for (List<Event> outbox : partition.outboxes) {
+        for (Event event : outbox) {
+          count += pendingDeliveryCount(event);
+        }
+      }
+    }
+    return count;
   }
 
   /**
@@ -36,27 +288,274 @@ class Simulation {
    * @return whether the simulation completed within the time limit
    */
   boolean run(double timeLimit) {
+    return run(timeLimit, StopCondition.NEVER);
+  }
+
+  /**
+   * Run until all events have been processed, or until {@code stopCondition} is met, whichever
+   * comes first. Any events left over are counted by {@link #getSkippedEventCount()}.
+   *
+   * <p>A parallel simulation checks the stop condition at the end of each window rather than after
+   * each termination, so it may process some events past the point where the condition was met.
+   * This doesn't change the outcome for conditions like {@link
+   * StopCondition#allCorrectNodesTerminated()}, after which nothing observable happens.
+   *
+   * @param timeLimit the maximum amount of time before the simulation halts
+   * @param stopCondition a condition under which to stop early, checked when a node terminates
+   * @return whether the simulation completed or met the stop condition within the time limit
+   */
+  boolean run(double timeLimit, StopCondition stopCondition) {
     for (Node node : network.getNodes()) {
       node.onStart(this);
     }
+    if (stopCondition.isMet(this)) {
+      return true;
+    }
+
+    if (partitions.length == 1) {
+      Partition partition = partitions[0];
+      return partition.process(Long.MAX_VALUE, timeLimit, stopCondition)
+          || partition.eventQueue.isEmpty();
+    }
 
-    while (!eventsByTime.isEmpty()) {
-      Event event = eventsByTime.pollFirst();
-      if (event.getTime() > timeLimit) {
-        //System.out.println("WARNING: Simulation timed out");
+    ForkJoinPool pool = new ForkJoinPool(partitions.length);
+    try {
+      return runWindows(pool, timeLimit, stopCondition);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private boolean runWindows(ForkJoinPool pool, double timeLimit, StopCondition stopCondition) {
+    while (true) {
+      deliverOutboxes();
+      if (stopCondition.isMet(this)) {
+        return true;
+      }
+
+      Partition firstPartition = null;
+      for (Partition partition : partitions) {
+        Event head = partition.eventQueue.peek();
+        if (head != null && (firstPartition == null
+            || head.compareTo(firstPartition.eventQueue.peek()) < 0)) {
+          firstPartition = partition;
+        }
+      }
+      if (firstPartition == null) {
+        return true;
+      }
+      Event first = firstPartition.eventQueue.peek();
+      if (first.getTime() > timeLimit) {
         return false;
       }
 
+      // No remaining event is earlier than the first by more than the time resolution's precision,
+      // so no message sent from now on can arrive before the end of this window.
+      double windowStart = first.getTime() - timeResolution.getPrecision();
+      long windowEnd = timeResolution.toKey(windowStart + lookahead);
+      if (windowEnd > first.getTimeKey()) {
+        pool.invoke(new WindowTask(windowEnd, timeLimit, 0, partitions.length));
+      } else {
+        // There's no lookahead, or it's lost to rounding at this time, so fall back to sequential
+        // processing. The first event is always safe to process, since nothing can precede it.
+        firstPartition.process(first.getTimeKey() + 1, timeLimit, StopCondition.NEVER, 1);
+      }
+    }
+  }
+
+  /** Move events sent between partitions into the queues of their destination partitions. */
+  private void deliverOutboxes() {
+    for (Partition source : partitions) {
+      for (int p = 0; p < partitions.length; ++p) {
+        List<Event> outbox = source.outboxes.get(p);
+        for (Event event : outbox) {
+          partitions[p].add(event);
+        }
+        outbox.clear();
+      }
+    }
+  }
+
+  private Partition getPartition(Node node) {
+    return partitions[partitionIndices[node.getId()]];
+  }
+
+  private long nextSequence(Node source) {
+    // Interleave the counters of all nodes, so events scheduled by different nodes at the same
+    // time are roughly ordered by when they were scheduled.
+    return scheduledEventCounts[source.getId()]++ * scheduledEventCounts.length + source.getId();
+  }
+
+  private static int pendingDeliveryCount(Event event) {
+    return event instanceof BroadcastEvent
+        ? ((BroadcastEvent) event).getPendingDeliveryCount() : 1;
+  }
+
+  private static int partitionCount(Network network, int parallelism) {
+    return Math.max(1, Math.min(parallelism, network.getNodes().size()));
+  }
+
+  private static EventQueue[] newEventQueues(Supplier<EventQueue> eventQueues, int count) {
+    EventQueue[] queues = new EventQueue[count];
+    for (int i = 0; i < count; ++i) {
+      queues[i] = eventQueues.get();
+    }
+    return queues;
+  }
+
+  /**
+   * Assign nodes to {@code count} partitions of about equal size, in bands of longitude. Nodes at
+   * the same longitude, such as those in the same datacenter, are kept in the same partition.
+   */
+  private static int[] partitionByLongitude(List<Node> nodes, int count) {
+    double[] longitudes = new double[nodes.size()];
+    for (int i = 0; i < longitudes.length; ++i) {
+      longitudes[i] = nodes.get(i).getPosition().getLongitude();
+    }
+    int[] order = Util.sortedIndices(longitudes, longitudes.length);
+    int[] partitionIndices = new int[nodes.size()];
+    for (int i = 0; i < order.length; ++i) {
+      partitionIndices[order[i]] = i > 0 && longitudes[order[i]] == longitudes[order[i - 1]]
+          ? partitionIndices[order[i - 1]] : (int) ((long) i * count / order.length);
+    }
+    return partitionIndices;
+  }
+
+  private static double computeLookahead(Network network, int[] partitionIndices) {
+    List<Node> nodes = network.getNodes();
+    double lookahead = Double.POSITIVE_INFINITY;
+    for (Node source : nodes) {
+      for (Node destination : nodes) {
+        if (partitionIndices[source.getId()] != partitionIndices[destination.getId()]) {
+          lookahead = Math.min(lookahead, network.getMinLatency(source, destination));
+        }
+      }
+    }
+    return lookahead;
+  }
+
+  /** A set of nodes and the events whose subjects they are. */
+  private class Partition {
+    final EventQueue eventQueue;
+    /** Events sent to nodes of each partition, held until the end of the current window. */
+    final List<List<Event>> outboxes;
+    /** The number of events, counting each pending broadcast delivery, not yet processed. */
+    long pendingEventCount = 0;
+    long processedEventCount = 0;
+    /** The number of messages sent by this partition's nodes. */
+    long sentMessageCount = 0;
+    long sentByteCount = 0;
+    int terminatedCorrectNodeCount = 0;
+
+    Partition(EventQueue eventQueue, int partitionCount) {
+      this.eventQueue = eventQueue;
+      this.outboxes = new ArrayList<>(partitionCount);
+      for (int i = 0; i < partitionCount; ++i) {
+        outboxes.add(new ArrayList<>());
+      }
+    }
+
+    /** Send an event from one of this partition's nodes. */
+    void send(Event event) {
+      Partition destination = getPartition(event.getSubject());
+      if (destination == this) {
+        add(event);
+      } else {
+        outboxes.get(partitionIndices[event.getSubject().getId()]).add(event);
+      }
+    }
+
+    void add(Event event) {
+      eventQueue.add(event);
+      pendingEventCount += pendingDeliveryCount(event);
+    }
+
+    boolean process(long keyLimit, double timeLimit, StopCondition stopCondition) {
+      return process(keyLimit, timeLimit, stopCondition, Long.MAX_VALUE);
+    }
+
+    /**
+     * Process events in order, up to but excluding the first whose key is {@code keyLimit} or more,
+     * or whose time is past {@code timeLimit}.
+     *
+     * @param maxEvents the maximum number of events to process
+     * @return whether the stop condition was met
+     */
+    boolean process(long keyLimit, double timeLimit, StopCondition stopCondition,
+        long maxEvents) {
+      for (long i = 0; i < maxEvents; ++i) {
+        Event event = eventQueue.peek();
+        if (event == null || event.getTimeKey() >= keyLimit || event.getTime() > timeLimit) {
+          return false;
+        }
+        eventQueue.poll();
+        if (processEvent(event) && stopCondition.isMet(Simulation.this)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Process a single event, returning whether it caused a correct node to terminate. */
+    private boolean processEvent(Event event) {
+      --pendingEventCount;
+      ++processedEventCount;
+
       Node subject = event.getSubject();
+      boolean wasTerminated = subject.hasTerminated();
       if (event instanceof TimerEvent) {
-        subject.onTimerEvent((TimerEvent) event, this);
+        timers[subject.getId()] = null;
+        subject.onTimerEvent((TimerEvent) event, Simulation.this);
       } else if (event instanceof MessageEvent) {
-        subject.onMessageEvent((MessageEvent) event, this);
+        subject.onMessageEvent((MessageEvent) event, Simulation.this);
+      } else if (event instanceof BroadcastEvent) {
+        BroadcastEvent broadcastEvent = (BroadcastEvent) event;
+        MessageEvent delivery = broadcastEvent.pollDelivery();
+        if (broadcastEvent.hasPendingDeliveries()) {
+          // Requeue at the time of the next delivery. The sequence number is kept, so deliveries
+          // are ordered as if they had all been scheduled up front.
+          broadcastEvent.setOrder(timeResolution.toKey(broadcastEvent.getTime()),
+              broadcastEvent.getSequence());
+          eventQueue.add(broadcastEvent);
+        }
+        if (!subject.hasTerminated()) {
+          subject.onMessageEvent(delivery, Simulation.this);
+        }
       } else {
         throw new AssertionError("Unexpected event: " + event);
       }
+
+      if (!wasTerminated && subject.hasTerminated() && !(subject instanceof FailedNode)) {
+        ++terminatedCorrectNodeCount;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /** Runs a window in each of a range of partitions, splitting the range across threads. */
+  private class WindowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long windowEnd;
+    private final double timeLimit;
+    private final int start, end;
+
+    WindowTask(long windowEnd, double timeLimit, int start, int end) {
+      this.windowEnd = windowEnd;
+      this.timeLimit = timeLimit;
+      this.start = start;
+      this.end = end;
     }
 
-    return true;
+    @Override protected void compute() {
+      if (end - start == 1) {
+        partitions[start].process(windowEnd, timeLimit, StopCondition.NEVER);
+        return;
+      }
+      int mid = (start + end) >>> 1;
+      invokeAll(new WindowTask(windowEnd, timeLimit, start, mid),
+          new WindowTask(windowEnd, timeLimit, mid, end));
+    }
   }
-}
\ No newline at end of file
+}
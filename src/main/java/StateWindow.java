@@ -0,0 +1,103 @@
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The state of each cycle (or round, or view) of a protocol, indexed from 0, which keeps only the
+ * indices from a low-water mark up. A node only ever looks at its recent cycles, or at old ones
+ * which could still reach a quorum, so once it has moved on, the state below the mark is released,
+ * and the state it keeps is bounded by how far apart the cycles of the nodes it hears from are,
+ * rather than by how many cycles a run takes.
+ *
+ * <p>States are kept in a ring buffer, which doubles when an index beyond its end is needed, and
+ * are created when first needed.
+ */
+class StateWindow<T> {
+  private final Supplier<T> factory;
+  private Object[] states = new Object[8];
+  /** The low-water mark: the lowest index which hasn't been released. */
+  private int base = 0;
+
+  StateWindow(Supplier<T> factory) {
+    this.factory = factory;
+  }
+
+  /** The lowest index which hasn't been released. */
+  int getBase() {
+    return base;
+  }
+
+  /** Whether the state of {@code index} has been released. */
+  boolean isReleased(int index) {
+    return index < base;
+  }
+
+  /** The state of {@code index}, creating it if needed, which mustn't have been released. */
+  T get(int index) {
+    if (index < base) {
+      throw new IllegalArgumentException("State of " + index + " was released");
+    }
+    T state = find(index);
+    if (state == null) {
+      ensureCapacity(index - base + 1);
+      state = factory.get();
+      states[slot(index)] = state;
+    }
+    return state;
+  }
+
+  /** The state of {@code index}, or null if it hasn't been created or has been released. */
+  @SuppressWarnings("unchecked")
+  T find(int index) {
+    if (index < base || index - base >= states.length) {
+      return null;
+    }
+    return (T) states[slot(index)];
+  }
+
+  /** Release the state of every index below {@code lowWaterMark}. */
+  void release(int lowWaterMark) {
+    int end = Math.min(lowWaterMark, base + states.length);
+    for (int index = base; index < end; ++index) {
+      states[slot(index)] = null;
+    }
+    base = Math.max(base, lowWaterMark);
+  }
+
+  /**
+   * Release states in order from the low-water mark, up to but not including {@code limit}, while
+   * they're settled: whatever may still arrive for them can no longer matter. A state which was
+   * never created is settled.
+   */
+  void releaseSettled(int limit, Predicate<T> isSettled) {
+    while (base < limit) {
+      T state = find(base);
+      if (state != null && !isSettled.test(state)) {
+        return;
+      }
+      release(base + 1);
+    }
+  }
+
+  /** Release every state, and start again from index 0. */
+  void clear() {
+    Arrays.fill(states, null);
+    base = 0;
+  }
+
+  private int slot(int index) {
+    return index & (states.length - 1);
+  }
+
+  private void ensureCapacity(int span) {
+    if (span <= states.length) {
+      return;
+    }
+    int capacity = Integer.highestOneBit(span - 1) << 1;
+    Object[] grown = new Object[capacity];
+    for (int index = base; index < base + states.length; ++index) {
+      grown[index & (capacity - 1)] = states[slot(index)];
+    }
+    states = grown;
+  }
+}
@@ -0,0 +1,21 @@
+/**
+ * A condition under which a simulation may stop before its event queue is drained, because the
+ * outcome of interest has already been decided. Conditions are checked whenever a node terminates.
+ */
+interface StopCondition {
+  /** Never stop early; run until no events remain. */
+  StopCondition NEVER = simulation -> false;
+
+  boolean isMet(Simulation simulation);
+
+  /** Stop once every correct node has terminated. */
+  static StopCondition allCorrectNodesTerminated() {
+    return simulation ->
+        simulation.getTerminatedCorrectNodeCount() == simulation.getCorrectNodeCount();
+  }
+
+  /** Stop once at least {@code count} correct nodes have terminated. */
+  static StopCondition correctNodesTerminated(int count) {
+    return simulation -> simulation.getTerminatedCorrectNodeCount() >= count;
+  }
+}
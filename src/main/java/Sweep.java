@@ -0,0 +1,65 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runs independent simulation samples in parallel on a work-stealing pool. Results are handed back
+ * in sample order on the calling thread, so anything folded from them doesn't depend on the number
+ * of threads.
+ */
+class Sweep {
+  /** The maximum number of samples whose results are held in memory at once. */
+  private static final int BLOCK_SIZE = 4096;
+
+  private final ForkJoinPool pool;
+
+  Sweep(int parallelism) {
+    this.pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Run {@code count} samples, and pass each result to {@code sink} along with its sample index.
+   * {@code sample} may be called concurrently, but {@code sink} is only called from this thread, in
+   * order of sample index.
+   */
+  <T> void run(int count, IntFunction<T> sample, ObjIntConsumer<T> sink) {
+    for (int blockStart = 0; blockStart < count; blockStart += BLOCK_SIZE) {
+      int blockEnd = Math.min(blockStart + BLOCK_SIZE, count);
+      Object[] results = new Object[blockEnd - blockStart];
+      pool.invoke(new SampleTask<>(sample, results, blockStart, 0, results.length));
+      for (int i = 0; i < results.length; ++i) {
+        @SuppressWarnings("unchecked")
+        T result = (T) results[i];
+        sink.accept(result, blockStart + i);
+      }
+    }
+  }
+
+  /** Runs a range of samples, splitting it in half until each task runs a single sample. */
+  private static class SampleTask<T> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final IntFunction<T> sample;
+    private final Object[] results;
+    private final int offset, from, to;
+
+    SampleTask(IntFunction<T> sample, Object[] results, int offset, int from, int to) {
+      this.sample = sample;
+      this.results = results;
+      this.offset = offset;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override protected void compute() {
+      if (to - from == 1) {
+        results[from] = sample.apply(offset + from);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new SampleTask<>(sample, results, offset, from, mid),
+          new SampleTask<>(sample, results, offset, mid, to));
+    }
+  }
+}
@@ -0,0 +1,29 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** The Tendermint protocol, run by {@link CorrectTendermintNode}. */
+public class TendermintProtocol implements ConsensusProtocol {
+  @Override public String getName() {
+    return "tendermint";
+  }
+
+  @Override public String getDisplayName() {
+    return "Tendermint";
+  }
+
+  @Override public Node createCorrectNode(EarthPosition position, double initialTimeout) {
+    return new CorrectTendermintNode(position, initialTimeout);
+  }
+
+  @Override public List<String> getMetricNames() {
+    return Collections.singletonList("cycles_per_height");
+  }
+
+  @Override public void recordMetrics(
+      Simulation simulation, List<Node> correctNodes, Map<String, Double> metrics) {
+    metrics.put("cycles_per_height",
+        ConsensusProtocol.meanPerHeight(
+            correctNodes, node -> ((CorrectTendermintNode) node).getCycleCount()));
+  }
+}
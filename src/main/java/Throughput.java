@@ -0,0 +1,90 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The sustained performance of a run in which correct nodes decide many heights, measured from the
+ * times at which each of them decided each height.
+ */
+class Throughput {
+  private final int heights;
+  private final double blocksPerSecond;
+  private final double[] interCommitLatencies;
+  private final int maxHeightSkew;
+
+  private Throughput(int heights, double blocksPerSecond, double[] interCommitLatencies,
+      int maxHeightSkew) {
+    this.heights = heights;
+    this.blocksPerSecond = blocksPerSecond;
+    this.interCommitLatencies = interCommitLatencies;
+    this.maxHeightSkew = maxHeightSkew;
+  }
+
+  static Throughput measure(List<Node> correctNodes) {
+    double[][] commitTimes = new double[correctNodes.size()][];
+    int heights = Integer.MAX_VALUE, maxHeights = 0, intervalCount = 0;
+    for (int i = 0; i < commitTimes.length; ++i) {
+      commitTimes[i] = correctNodes.get(i).getCommitTimes();
+      heights = Math.min(heights, commitTimes[i].length);
+      maxHeights = Math.max(maxHeights, commitTimes[i].length);
+      intervalCount += commitTimes[i].length;
+    }
+
+    // The earliest and latest time at which each height was decided. Each node decides heights in
+    // order, so both are nondecreasing in height. Heights which some nodes never decided have no
+    // latest time.
+    double[] first = new double[maxHeights], last = new double[maxHeights];
+    Arrays.fill(first, Double.POSITIVE_INFINITY);
+    Arrays.fill(last, Double.NEGATIVE_INFINITY);
+    double[] interCommitLatencies = new double[intervalCount];
+    int interval = 0;
+    for (double[] times : commitTimes) {
+      for (int h = 0; h < times.length; ++h) {
+        first[h] = Math.min(first[h], times[h]);
+        last[h] = Math.max(last[h], times[h]);
+        interCommitLatencies[interval++] = times[h] - (h == 0 ? 0 : times[h - 1]);
+      }
+    }
+    for (int h = heights; h < maxHeights; ++h) {
+      last[h] = Double.POSITIVE_INFINITY;
+    }
+
+    // The skew peaks just as some node decides a new height, when the leading node has decided
+    // every height first decided by then, and the lagging node every height last decided by then.
+    int maxHeightSkew = 0;
+    for (int lead = 0, lag = 0; lead < maxHeights; ++lead) {
+      while (lag < maxHeights && last[lag] <= first[lead]) {
+        ++lag;
+      }
+      maxHeightSkew = Math.max(maxHeightSkew, lead + 1 - lag);
+    }
+
+    double blocksPerSecond = heights == 0 ? 0 : heights / last[heights - 1];
+    return new Throughput(heights, blocksPerSecond, interCommitLatencies, maxHeightSkew);
+  }
+
+  /** The number of heights decided by every correct node. */
+  int getHeights() {
+    return heights;
+  }
+
+  /**
+   * The rate at which the network as a whole decided heights: the number decided by every correct
+   * node, over the time by which they all had.
+   */
+  double getBlocksPerSecond() {
+    return blocksPerSecond;
+  }
+
+  /**
+   * The time between each node's consecutive decisions, or since the start for its first, over all
+   * correct nodes.
+   */
+  double[] getInterCommitLatencies() {
+    return interCommitLatencies;
+  }
+
+  /** The greatest difference, at any time, between the heights decided by two correct nodes. */
+  int getMaxHeightSkew() {
+    return maxHeightSkew;
+  }
+}
@@ -0,0 +1,38 @@
+/** Determines how event times, in seconds, are mapped to the integer keys which order events. */
+enum TimeResolution {
+  /**
+   * Events are ordered by their exact times. For non-negative doubles, the raw bits increase with
+   * the value, so they can be compared as longs.
+   */
+  EXACT {
+    @Override long toKey(double time) {
+      return Double.doubleToRawLongBits(time);
+    }
+
+    @Override double getPrecision() {
+      return 0;
+    }
+  },
+
+  /**
+   * Times are rounded to the nearest nanosecond, so events within a nanosecond of one another are
+   * treated as simultaneous. Keys are linear in time, which suits bucketed queues.
+   */
+  NANOSECONDS {
+    @Override long toKey(double time) {
+      return Math.round(time * 1e9);
+    }
+
+    @Override double getPrecision() {
+      return 1e-9;
+    }
+  };
+
+  abstract long toKey(double time);
+
+  /**
+   * An upper bound on the difference between the times of two events with the same key. An event
+   * ordered after another is never earlier than it by more than this.
+   */
+  abstract double getPrecision();
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Searches for the initial timeout which minimizes a protocol's mean latency, spending runs where
+ * they matter rather than on clearly bad timeouts.
+ *
+ * <p>The search first runs successive halving over a coarse grid of timeouts: every candidate gets
+ * a few runs, the better half survive, and the survivors get twice as many runs, until one remains.
+ * Then golden-section search refines the timeout within the grid cell on either side of the winner,
+ * until the bracket is narrower than the tolerance. Run i of every timeout replays the same
+ * scenario, so with these common random numbers the comparisons between timeouts are far less noisy
+ * than the latencies themselves.
+ */
+class TimeoutOptimizer {
+  private static final double INVERSE_PHI = (Math.sqrt(5) - 1) / 2;
+
+  private final Sweep sweep;
+  private final Objective objective;
+  private final AdaptiveSampler.RunStatistic statistic;
+  private final double censoredValue;
+  private final Map<Double, Evaluation> evaluations = new TreeMap<>();
+
+  /**
+   * @param objective runs a sample at a timeout, where run i replays scenario i for every timeout
+   * @param statistic summarizes the termination times of a run as a single value
+   * @param censoredValue the value given to runs which don't complete, such as the time limit
+   */
+  TimeoutOptimizer(Sweep sweep, Objective objective, AdaptiveSampler.RunStatistic statistic,
+      double censoredValue) {
+    this.sweep = sweep;
+    this.objective = objective;
+    this.statistic = statistic;
+    this.censoredValue = censoredValue;
+  }
+
+  /**
+   * Find the best timeout within [{@code low}, {@code high}].
+   *
+   * @param gridSize the number of timeouts in the initial grid
+   * @param initialRuns the number of runs for each grid timeout in the first round of halving
+   * @param maxRuns the number of runs after which halving stops doubling, which is also the number
+   *     used for refinement
+   * @param tolerance the width of the final bracket around the best timeout
+   */
+  Result optimize(double low, double high, int gridSize, int initialRuns, int maxRuns,
+      double tolerance) {
+    double step = (high - low) / (gridSize - 1);
+    List<Double> candidates = new ArrayList<>();
+    for (int i = 0; i < gridSize; ++i) {
+      candidates.add(low + i * step);
+    }
+
+    // Successive halving.
+    int runs = Math.min(initialRuns, maxRuns);
+    while (true) {
+      evaluate(candidates, runs);
+      if (candidates.size() == 1) {
+        break;
+      }
+      int finalRuns = runs;
+      candidates.sort((a, b) -> Double.compare(
+          evaluations.get(a).getMean(finalRuns), evaluations.get(b).getMean(finalRuns)));
+      candidates = new ArrayList<>(candidates.subList(0, (candidates.size() + 1) / 2));
+      runs = Math.min(2 * runs, maxRuns);
+    }
+    double winner = candidates.get(0);
+    runs = maxRuns;
+
+    // Golden-section refinement between the winner's neighbours in the grid.
+    double a = Math.max(low, winner - step), b = Math.min(high, winner + step);
+    double c = b - INVERSE_PHI * (b - a), d = a + INVERSE_PHI * (b - a);
+    evaluate(Arrays.asList(a, winner, b, c, d), runs);
+    while (b - a > tolerance) {
+      if (getMean(c, runs) < getMean(d, runs)) {
+        b = d;
+        d = c;
+        c = b - INVERSE_PHI * (b - a);
+        evaluate(Arrays.asList(c), runs);
+      } else {
+        a = c;
+        c = d;
+        d = a + INVERSE_PHI * (b - a);
+        evaluate(Arrays.asList(d), runs);
+      }
+    }
+
+    // The noisy objective may not be unimodal, so take the best of everything evaluated with the
+    // full number of runs, rather than trusting the final bracket.
+    int finalRuns = runs;
+    List<Point> curve = evaluations.entrySet().stream()
+        .filter(e -> e.getValue().getRunCount() >= finalRuns)
+        .map(e -> new Point(e.getKey(), e.getValue(), finalRuns))
+        .collect(Collectors.toList());
+    Point best = curve.stream()
+        .min((p, q) -> Double.compare(p.getMean(), q.getMean()))
+        .get();
+    return new Result(best, curve, getTotalRuns());
+  }
+
+  /** The total number of runs made so far, across all timeouts. */
+  int getTotalRuns() {
+    return evaluations.values().stream().mapToInt(Evaluation::getRunCount).sum();
+  }
+
+  private double getMean(double timeout, int runs) {
+    return evaluations.get(timeout).getMean(runs);
+  }
+
+  /** Make sure that each timeout has at least {@code runs} runs, running them in parallel. */
+  private void evaluate(List<Double> timeouts, int runs) {
+    List<Double> pendingTimeouts = new ArrayList<>();
+    List<Integer> pendingRuns = new ArrayList<>();
+    for (double timeout : new LinkedHashSet<>(timeouts)) {
+      Evaluation evaluation = evaluations.computeIfAbsent(timeout, t -> new Evaluation());
+      for (int i = evaluation.getRunCount(); i < runs; ++i) {
+        pendingTimeouts.add(timeout);
+        pendingRuns.add(i);
+      }
+    }
+    sweep.run(pendingTimeouts.size(),
+        i -> objective.run(pendingTimeouts.get(i), pendingRuns.get(i)),
+        (terminationTimes, i) -> evaluations.get(pendingTimeouts.get(i)).add(
+            terminationTimes.map(statistic::apply).orElse(censoredValue)));
+  }
+
+  /** Runs a single sample. */
+  interface Objective {
+    Optional<double[]> run(double timeout, int run);
+  }
+
+  /** The values of the runs made at a single timeout so far, in order of run. */
+  private static class Evaluation {
+    private double[] values = new double[16];
+    private int runCount = 0;
+
+    void add(double value) {
+      if (runCount == values.length) {
+        values = Arrays.copyOf(values, 2 * runCount);
+      }
+      values[runCount++] = value;
+    }
+
+    int getRunCount() {
+      return runCount;
+    }
+
+    /** The mean of the first {@code runs} runs, so that timeouts are compared on equal terms. */
+    double getMean(int runs) {
+      return Arrays.stream(values, 0, runs).average().getAsDouble();
+    }
+
+    double[] getValues(int runs) {
+      return Arrays.copyOf(values, runs);
+    }
+  }
+
+  /** The estimated latency at a single timeout. */
+  static class Point {
+    private final double timeout;
+    private final double[] values;
+    private final double mean, halfWidth;
+
+    private Point(double timeout, Evaluation evaluation, int runs) {
+      this.timeout = timeout;
+      this.values = evaluation.getValues(runs);
+      this.mean = evaluation.getMean(runs);
+      double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / (runs - 1);
+      this.halfWidth = AdaptiveSampler.Z_95 * Math.sqrt(variance / runs);
+    }
+
+    double getTimeout() {
+      return timeout;
+    }
+
+    double getMean() {
+      return mean;
+    }
+
+    /** The half-width of a 95% confidence interval for the mean. */
+    double getHalfWidth() {
+      return halfWidth;
+    }
+
+    /** The value of each run, where run i replays scenario i. */
+    double[] getValues() {
+      return values;
+    }
+  }
+
+  static class Result {
+    private final Point best;
+    private final List<Point> curve;
+    private final int totalRuns;
+
+    private Result(Point best, List<Point> curve, int totalRuns) {
+      this.best = best;
+      this.curve = curve;
+      this.totalRuns = totalRuns;
+    }
+
+    Point getBest() {
+      return best;
+    }
+
+    /** Every timeout evaluated with the full number of runs, in order of timeout. */
+    List<Point> getCurve() {
+      return curve;
+    }
+
+    int getTotalRuns() {
+      return totalRuns;
+    }
+  }
+}
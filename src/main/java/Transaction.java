@@ -0,0 +1,33 @@
+/** A client transaction, submitted to the mempool of a single correct node. */
+class Transaction {
+  /** A dense index identifying this transaction within its workload, in order of arrival. */
+  private final int id;
+  /** The ID of the node whose client submitted this transaction. */
+  private final int originId;
+  private final double arrivalTime;
+  private final int sizeBytes;
+
+  Transaction(int id, int originId, double arrivalTime, int sizeBytes) {
+    this.id = id;
+    this.originId = originId;
+    this.arrivalTime = arrivalTime;
+    this.sizeBytes = sizeBytes;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  int getOriginId() {
+    return originId;
+  }
+
+  /** The time at which the client submitted this transaction, in seconds. */
+  double getArrivalTime() {
+    return arrivalTime;
+  }
+
+  int getSizeBytes() {
+    return sizeBytes;
+  }
+}
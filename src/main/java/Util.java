@@ -1,12 +1,118 @@
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
 
 /** Holds some static utility methods. */
 class Util {
-  static <K> Set<K> keysWithMinCount(Map<K, Integer> counts, int min) {
-    return counts.keySet().stream()
-        .filter(k -> counts.get(k) >= min)
-        .collect(Collectors.toSet());
+  /**
+   * The indices of the first {@code count} keys, sorted by key. The sort is stable, so equal keys
+   * keep their original order.
+   */
+  static int[] sortedIndices(double[] keys, int count) {
+    int[] indices = new int[count];
+    for (int i = 0; i < count; ++i) {
+      indices[i] = i;
+    }
+    mergeSort(keys, indices, new int[count], 0, count);
+    return indices;
+  }
+
+  private static void mergeSort(double[] keys, int[] indices, int[] buffer, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(keys, indices, buffer, from, mid);
+    mergeSort(keys, indices, buffer, mid, to);
+    if (keys[indices[mid - 1]] <= keys[indices[mid]]) {
+      // Already in order.
+      return;
+    }
+    System.arraycopy(indices, from, buffer, from, to - from);
+    int left = from, right = mid;
+    for (int i = from; i < to; ++i) {
+      if (right >= to || left < mid && keys[buffer[left]] <= keys[buffer[right]]) {
+        indices[i] = buffer[left++];
+      } else {
+        indices[i] = buffer[right++];
+      }
+    }
+  }
+
+  /** Shuffle {@code list} in place, with each permutation equally likely, as Fisher-Yates does. */
+  static <T> void shuffle(List<T> list, RandomStream random) {
+    for (int i = list.size() - 1; i > 0; --i) {
+      Collections.swap(list, i, random.nextInt(i + 1));
+    }
+  }
+
+  /**
+   * Derive a seed from a root seed and a sequence of keys, such as (protocol, timeout, sample). The
+   * result depends only on its arguments, so a run can be reproduced without replaying the runs
+   * before it.
+   */
+  static long deriveSeed(long rootSeed, long... keys) {
+    long seed = mix(rootSeed);
+    for (long key : keys) {
+      seed = mix(seed ^ mix(key));
+    }
+    return seed;
+  }
+
+  /**
+   * A percentile bootstrap confidence interval for a statistic of the means of several samples,
+   * such as the relative difference between two protocols' mean latencies. Each replicate resamples
+   * every sample with replacement.
+   *
+   * @param statistic maps the mean of each sample to the statistic
+   * @param paired whether the samples are paired, i.e. their i-th values were observed together,
+   *     in which case they must have equal lengths and are resampled with the same indices
+   * @return the lower and upper bounds of the interval
+   */
+  static double[] bootstrapInterval(double[][] samples, ToDoubleFunction<double[]> statistic,
+      boolean paired, int replicates, double confidence, Random random) {
+    double[] results = new double[replicates];
+    double[] means = new double[samples.length];
+    double[] sums = new double[samples.length];
+    for (int r = 0; r < replicates; ++r) {
+      if (paired) {
+        Arrays.fill(sums, 0);
+        int length = samples[0].length;
+        for (int i = 0; i < length; ++i) {
+          int index = random.nextInt(length);
+          for (int s = 0; s < samples.length; ++s) {
+            sums[s] += samples[s][index];
+          }
+        }
+        for (int s = 0; s < samples.length; ++s) {
+          means[s] = sums[s] / length;
+        }
+      } else {
+        for (int s = 0; s < samples.length; ++s) {
+          double[] sample = samples[s];
+          double sum = 0;
+          for (int i = 0; i < sample.length; ++i) {
+            sum += sample[random.nextInt(sample.length)];
+          }
+          means[s] = sum / sample.length;
+        }
+      }
+      results[r] = statistic.applyAsDouble(means);
+    }
+    Arrays.sort(results);
+    double tail = (1 - confidence) / 2;
+    int low = (int) Math.floor(tail * (replicates - 1));
+    int high = (int) Math.ceil((1 - tail) * (replicates - 1));
+    return new double[] {results[low], results[high]};
+  }
+
+  /** The SplitMix64 finalizer, which maps nearby inputs to unrelated outputs. */
+  private static long mix(long z) {
+    z += 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
   }
 }
@@ -10,6 +10,18 @@ class Vector3d {
     this.z = z;
   }
 
+  double getX() {
+    return x;
+  }
+
+  double getY() {
+    return y;
+  }
+
+  double getZ() {
+    return z;
+  }
+
   /** The Euclidean norm of this vector. */
   double norm() {
     return Math.sqrt(x * x + y * y + z * z);
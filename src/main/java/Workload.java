@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The client transactions of a single run, and when each was committed. Each transaction is
+ * submitted to the mempool of one correct node, and reaches the others' mempools as if gossiped
+ * over the best-case path, without simulating a message per transaction. Its commit latency is the
+ * time until its origin node commits a block containing it, which is when its client would learn
+ * of the commit.
+ */
+class Workload {
+  private final Transaction[] transactions;
+  private final Network network;
+  private final int maxBatchBytes;
+  /** The time at which each transaction's origin committed it, or NaN if it hasn't yet. */
+  private final double[] commitTimes;
+
+  private Workload(Transaction[] transactions, Network network, int maxBatchBytes) {
+    this.transactions = transactions;
+    this.network = network;
+    this.maxBatchBytes = maxBatchBytes;
+    this.commitTimes = new double[transactions.length];
+    Arrays.fill(commitTimes, Double.NaN);
+  }
+
+  /** Create a mempool for {@code node}, holding the transactions it has received. */
+  Mempool createMempool(Node node) {
+    return new Mempool(node);
+  }
+
+  /** The commit latency of each committed transaction, in order of arrival. */
+  double[] getCommitLatencies() {
+    List<Double> latencies = new ArrayList<>();
+    for (Transaction transaction : transactions) {
+      double commitTime = commitTimes[transaction.getId()];
+      if (!Double.isNaN(commitTime)) {
+        latencies.add(commitTime - transaction.getArrivalTime());
+      }
+    }
+    return latencies.stream().mapToDouble(Double::doubleValue).toArray();
+  }
+
+  /**
+   * The number of transactions committed per second, from the start of the run until the last of
+   * them was committed, or 0 if none were.
+   */
+  double getThroughput() {
+    int committed = 0;
+    double lastCommitTime = 0;
+    for (double commitTime : commitTimes) {
+      if (!Double.isNaN(commitTime)) {
+        ++committed;
+        lastCommitTime = Math.max(lastCommitTime, commitTime);
+      }
+    }
+    return committed == 0 ? 0 : committed / lastCommitTime;
+  }
+
+  /** How to generate the workload of each run. */
+  static class Spec {
+    private final ArrivalProcess arrivalProcess;
+    private final int maxBatchBytes;
+
+    /** @param maxBatchBytes the maximum total size of the transactions in a single block */
+    Spec(ArrivalProcess arrivalProcess, int maxBatchBytes) {
+      this.arrivalProcess = arrivalProcess;
+      this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Generate the transactions arriving before {@code horizon}, submitting each to a correct node
+     * of {@code network} chosen uniformly at random.
+     */
+    Workload generate(RandomStream random, Network network, List<Node> correctNodes,
+        double horizon) {
+      ArrivalProcess.Arrivals arrivals = arrivalProcess.generate(random, horizon);
+      Transaction[] transactions = new Transaction[arrivals.getCount()];
+      for (int i = 0; i < transactions.length; ++i) {
+        Node origin = correctNodes.get(random.nextInt(correctNodes.size()));
+        transactions[i] =
+            new Transaction(i, origin.getId(), arrivals.getTime(i), arrivals.getSize(i));
+      }
+      return new Workload(transactions, network, maxBatchBytes);
+    }
+  }
+
+  /**
+   * The transactions a node has received and not yet committed. Transactions are scanned in order
+   * of arrival, starting from the earliest one not yet committed, so proposing a block costs time
+   * proportional to the backlog rather than to the whole workload.
+   */
+  class Mempool {
+    private final Node node;
+    private final BitSet committed = new BitSet();
+    /** The index of the earliest transaction not yet committed by this node. */
+    private int firstUncommitted = 0;
+
+    private Mempool(Node node) {
+      this.node = node;
+    }
+
+    /**
+     * Select a batch to propose at {@code time}: the earliest transactions this node has received,
+     * up to the batch size limit, excluding any already committed or in {@code pending} blocks.
+     */
+    Transaction[] selectBatch(double time, Proposal... pending) {
+      BitSet excluded = new BitSet();
+      for (Proposal proposal : pending) {
+        for (Transaction transaction : proposal.getTransactions()) {
+          excluded.set(transaction.getId());
+        }
+      }
+
+      List<Transaction> batch = new ArrayList<>();
+      int batchBytes = 0;
+      for (int i = firstUncommitted;
+          i < transactions.length && transactions[i].getArrivalTime() <= time; ++i) {
+        Transaction transaction = transactions[i];
+        if (committed.get(i) || excluded.get(i) || getReceiptTime(transaction) > time) {
+          continue;
+        }
+        if (batchBytes + transaction.getSizeBytes() > maxBatchBytes) {
+          break;
+        }
+        batch.add(transaction);
+        batchBytes += transaction.getSizeBytes();
+      }
+      return batch.toArray(new Transaction[0]);
+    }
+
+    /** Remove the transactions of a block this node committed, recording those it originated. */
+    void commit(Proposal proposal, double time) {
+      for (Transaction transaction : proposal.getTransactions()) {
+        int id = transaction.getId();
+        if (committed.get(id)) {
+          continue;
+        }
+        committed.set(id);
+        if (transaction.getOriginId() == node.getId()) {
+          // Only the origin writes this entry, so concurrent partitions never share one.
+          commitTimes[id] = time;
+        }
+      }
+      firstUncommitted = committed.nextClearBit(firstUncommitted);
+    }
+
+    /**
+     * The time at which this node received a transaction, directly or through gossip, over the
+     * best-case path of the network, which may be an overlay.
+     */
+    private double getReceiptTime(Transaction transaction) {
+      Node origin = network.getNodes().get(transaction.getOriginId());
+      return transaction.getArrivalTime() + network.getBaseLatency(origin, node);
+    }
+  }
+}